@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlHandler;
+import groovy.lang.Closure;
+import groovy.sql.BatchingPreparedStatementWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Inserts the same number of rows with {@code GsqlHandler.batchInsert} and with a hand-rolled
+ * {@code Sql.withBatch}, across several batch sizes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+    private static final String INSERT = "INSERT INTO scratch (id, name, lastname) VALUES (?, ?, ?)";
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"1", "100", "1000", "10000"})
+    public int batchSize;
+
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+
+    @Setup
+    public void setup() {
+        fixture = new GsqlFixture(GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(callback(sql -> {
+            sql.execute("DROP TABLE IF EXISTS scratch");
+            sql.execute("CREATE TABLE scratch (id INTEGER NOT NULL, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL)");
+            return null;
+        }));
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() {
+        gsqlHandler.withSql(callback(sql -> sql.execute("TRUNCATE TABLE scratch")));
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public long batchInsert() {
+        return gsqlHandler.batchInsert("scratch", new GeneratedRows(rows), batchSize);
+    }
+
+    @Benchmark
+    public int[] withBatch() {
+        return gsqlHandler.withSql(callback(sql -> sql.withBatch(batchSize, INSERT, new BatchFiller(new GeneratedRows(rows)))));
+    }
+
+    /**
+     * Produces rows on demand, the way a file or queue reader would.
+     */
+    private static final class GeneratedRows implements Iterable<Map<String, Object>> {
+        private final int count;
+
+        private GeneratedRows(int count) {
+            this.count = count;
+        }
+
+        @Nonnull
+        @Override
+        public Iterator<Map<String, Object>> iterator() {
+            return new Iterator<Map<String, Object>>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < count;
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (next >= count) {
+                        throw new NoSuchElementException();
+                    }
+                    int id = next++;
+                    Map<String, Object> row = new LinkedHashMap<>(4);
+                    row.put("id", id);
+                    row.put("name", "name" + id);
+                    row.put("lastname", "lastname" + id);
+                    return row;
+                }
+            };
+        }
+    }
+
+    private static final class BatchFiller extends Closure<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Iterable<Map<String, Object>> rows;
+
+        private BatchFiller(@Nonnull Iterable<Map<String, Object>> rows) {
+            super(null);
+            this.rows = rows;
+        }
+
+        public void doCall(BatchingPreparedStatementWrapper ps) throws SQLException {
+            for (Map<String, Object> row : rows) {
+                ps.addBatch(new Object[]{row.get("id"), row.get("name"), row.get("lastname")});
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.plugins.gsql.ColumnarResult;
+import griffon.plugins.gsql.GsqlHandler;
+import groovy.sql.GroovyRowResult;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Loads a large result as {@code GroovyRowResult} maps and as a {@code ColumnarResult}, then scans one of its
+ * columns. The heap retained by each form is measured once per trial and reported by the scan benchmarks as a
+ * {@code retainedKb} secondary result; run with {@code -PjmhProfilers=gc} to compare the allocations made while
+ * loading.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ColumnarBenchmark {
+    private static final String SELECT_ALL = "SELECT id, region, quantity, total FROM sales";
+
+    @Param({"500000"})
+    public int rows;
+
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+    private List<GroovyRowResult> rowMaps;
+    private ColumnarResult columnar;
+    private long rowsRetainedKb;
+    private long columnarRetainedKb;
+
+    @Setup
+    public void setup() {
+        fixture = new GsqlFixture(GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(callback(sql -> {
+            sql.execute("DROP TABLE IF EXISTS sales");
+            sql.execute("CREATE TABLE sales (id INTEGER NOT NULL PRIMARY KEY, region VARCHAR(20) NOT NULL, quantity INTEGER NOT NULL, total DOUBLE NOT NULL)");
+            sql.execute("INSERT INTO sales (id, region, quantity, total) SELECT X, 'region' || MOD(X, 12), MOD(X, 100), X * 1.5 FROM SYSTEM_RANGE(1, " + rows + ")");
+            return null;
+        }));
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedAfterGc(memory);
+        rowMaps = loadRows();
+        long afterRows = usedAfterGc(memory);
+        columnar = loadColumnar();
+        long afterColumnar = usedAfterGc(memory);
+        rowsRetainedKb = (afterRows - before) / 1024;
+        columnarRetainedKb = (afterColumnar - afterRows) / 1024;
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<GroovyRowResult> loadRows() {
+        return gsqlHandler.withSql(callback(sql -> sql.rows(SELECT_ALL)));
+    }
+
+    @Benchmark
+    public ColumnarResult loadColumnar() {
+        return gsqlHandler.columnar(SELECT_ALL, Collections.emptyList());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double scanRows(RowsRetained retained) {
+        double sum = 0d;
+        for (GroovyRowResult row : rowMaps) {
+            sum += ((Number) row.get("TOTAL")).doubleValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double scanColumnar(ColumnarRetained retained) {
+        return columnar.column("total").doubles().sum();
+    }
+
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RowsRetained {
+        public long retainedKb;
+
+        @Setup(Level.Iteration)
+        public void setup(ColumnarBenchmark benchmark) {
+            retainedKb = benchmark.rowsRetainedKb;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ColumnarRetained {
+        public long retainedKb;
+
+        @Setup(Level.Iteration)
+        public void setup(ColumnarBenchmark benchmark) {
+            retainedKb = benchmark.columnarRetainedKb;
+        }
+    }
+}
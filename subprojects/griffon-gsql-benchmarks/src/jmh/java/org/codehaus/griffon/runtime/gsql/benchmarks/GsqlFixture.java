@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlCallback;
+import griffon.plugins.gsql.GsqlFactory;
+import griffon.plugins.gsql.GsqlHandler;
+import griffon.plugins.gsql.GsqlStorage;
+import groovy.sql.Sql;
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlHandler;
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlStorage;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wires a {@code DefaultGsqlHandler} against pooled in-memory H2 databases without
+ * booting a full Griffon application.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class GsqlFixture implements AutoCloseable {
+    public static final String DEFAULT = "default";
+
+    private final Map<String, JdbcConnectionPool> pools = new LinkedHashMap<>();
+    private final GsqlStorage gsqlStorage = new DefaultGsqlStorage();
+    private final GsqlFactory gsqlFactory;
+    private final GsqlHandler gsqlHandler;
+
+    public GsqlFixture(@Nonnull String... datasourceNames) {
+        this(Collections.<String, Object>emptyMap(), datasourceNames);
+    }
+
+    /**
+     * @param configuration the settings every datasource reports, e.g. {@code sqlScope}.
+     */
+    public GsqlFixture(@Nonnull Map<String, Object> configuration, @Nonnull String... datasourceNames) {
+        requireNonNull(configuration, "Argument 'configuration' must not be null");
+        for (String name : datasourceNames) {
+            JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:gsql-bench-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+            pool.setMaxConnections(128);
+            pools.put(name, pool);
+        }
+        gsqlFactory = newFactory(pools, Collections.unmodifiableMap(new LinkedHashMap<>(configuration)));
+        gsqlHandler = new DefaultGsqlHandler(gsqlFactory, gsqlStorage);
+    }
+
+    @Nonnull
+    public GsqlHandler getGsqlHandler() {
+        return gsqlHandler;
+    }
+
+    @Nonnull
+    public GsqlStorage getGsqlStorage() {
+        return gsqlStorage;
+    }
+
+    @Nonnull
+    public GsqlFactory getGsqlFactory() {
+        return gsqlFactory;
+    }
+
+    /**
+     * Adapts JDBC code that throws {@code SQLException} to a {@code GsqlCallback}.
+     */
+    @Nonnull
+    public static <R> GsqlCallback<R> callback(@Nonnull final SqlWork<R> work) {
+        return (datasourceName, sql) -> {
+            try {
+                return work.execute(sql);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        for (String name : pools.keySet()) {
+            gsqlHandler.closeSql(name);
+        }
+        for (JdbcConnectionPool pool : pools.values()) {
+            pool.dispose();
+        }
+        pools.clear();
+    }
+
+    public interface SqlWork<R> {
+        R execute(@Nonnull Sql sql) throws SQLException;
+    }
+
+    @Nonnull
+    private static GsqlFactory newFactory(@Nonnull final Map<String, JdbcConnectionPool> pools, @Nonnull final Map<String, Object> configuration) {
+        // a dynamic proxy keeps the fixture independent from the shape of ObjectFactory
+        final Set<String> names = Collections.unmodifiableSet(pools.keySet());
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "create":
+                    return new Sql(requireNonNull(pools.get((String) args[0]), "Unknown datasource " + args[0]));
+                case "destroy":
+                    ((Sql) args[1]).close();
+                    return null;
+                case "getDatasourceNames":
+                case "getObjectNames":
+                    return names;
+                case "getConfigurationFor":
+                    return configuration;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "GsqlFactory" + names;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        };
+        return (GsqlFactory) Proxy.newProxyInstance(GsqlFixture.class.getClassLoader(), new Class<?>[]{GsqlFactory.class}, handler);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.plugins.gsql.GsqlHandler;
+import griffon.plugins.gsql.ResultSetMapper;
+import groovy.lang.GroovyClassLoader;
+import groovy.sql.GroovyRowResult;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Reads a page of rows into objects: {@code sql.rows} alone, {@code sql.rows} followed by map constructor
+ * conversion, and the mapper generated by {@code @GsqlRowMapper}. Run with {@code -PjmhProfilers=gc} to compare
+ * allocation rates.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+    // aliases keep the keys of GroovyRowResult in line with the property names
+    private static final String SELECT_PAGE = "SELECT id AS \"id\", name AS \"name\", lastname AS \"lastname\", age AS \"age\" FROM people";
+    private static final String PERSON = "" +
+        "@griffon.transform.gsql.GsqlRowMapper\n" +
+        "class Person {\n" +
+        "    long id\n" +
+        "    String name\n" +
+        "    String lastname\n" +
+        "    int age\n" +
+        "}\n";
+
+    @Param({"1000"})
+    public int rows;
+
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+    private Class<?> personClass;
+    private ResultSetMapper<?> rowMapper;
+
+    @Setup
+    public void setup() throws IOException, ReflectiveOperationException {
+        fixture = new GsqlFixture(GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(callback(sql -> {
+            sql.execute("DROP TABLE IF EXISTS people");
+            sql.execute("CREATE TABLE people (id BIGINT NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL, age INTEGER NOT NULL)");
+            sql.execute("INSERT INTO people (id, name, lastname, age) SELECT X, 'name' || X, 'lastname' || X, MOD(X, 90) FROM SYSTEM_RANGE(1, " + rows + ")");
+            return null;
+        }));
+
+        try (GroovyClassLoader classLoader = new GroovyClassLoader(getClass().getClassLoader())) {
+            personClass = classLoader.parseClass(PERSON, "Person.groovy");
+        }
+        rowMapper = (ResultSetMapper<?>) personClass.getField("ROW_MAPPER").get(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<GroovyRowResult> groovyRowResults() {
+        return gsqlHandler.withSql(callback(sql -> sql.rows(SELECT_PAGE)));
+    }
+
+    @Benchmark
+    public List<Object> groovyRowResultsToObjects() {
+        return gsqlHandler.withSql(callback(sql -> {
+            List<GroovyRowResult> page = sql.rows(SELECT_PAGE);
+            List<Object> people = new ArrayList<>(page.size());
+            for (GroovyRowResult row : page) {
+                // the same path as new Person(row) in dynamic Groovy code
+                people.add(InvokerHelper.invokeConstructorOf(personClass, row));
+            }
+            return people;
+        }));
+    }
+
+    @Benchmark
+    public List<?> generatedMapper() {
+        return gsqlHandler.withSql(callback(sql -> rowMapper.rows(sql, SELECT_PAGE)));
+    }
+}
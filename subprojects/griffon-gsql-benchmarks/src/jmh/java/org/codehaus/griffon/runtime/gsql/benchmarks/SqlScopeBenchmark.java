@@ -0,0 +1,106 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.plugins.gsql.GsqlHandler;
+import groovy.sql.GroovyRowResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Single row lookups under 1/16/64 concurrent threads for every {@code sqlScope}: one {@code Sql} shared by all
+ * callers, one per thread and one per call.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlScopeBenchmark {
+    private static final String SELECT_ONE = "SELECT id, name, lastname FROM people WHERE id = ?";
+
+    @Param({"shared", "perThread", "perCall"})
+    public String sqlScope;
+
+    @Param({"100000"})
+    public int rows;
+
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+
+    @Setup
+    public void setup() {
+        fixture = new GsqlFixture(Collections.<String, Object>singletonMap("sqlScope", sqlScope), GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(callback(sql -> {
+            sql.execute("DROP TABLE IF EXISTS people");
+            sql.execute("CREATE TABLE people (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL)");
+            sql.execute("INSERT INTO people (id, name, lastname) SELECT X, 'name' || X, 'lastname' || X FROM SYSTEM_RANGE(1, " + rows + ")");
+            return null;
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public GroovyRowResult singleRow() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public GroovyRowResult singleRow_16threads() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public GroovyRowResult singleRow_64threads() {
+        return selectOne();
+    }
+
+    private GroovyRowResult selectOne() {
+        final List<Object> params = Collections.<Object>singletonList(ThreadLocalRandom.current().nextInt(1, rows + 1));
+        return gsqlHandler.withSql(callback(sql -> sql.firstRow(SELECT_ONE, params)));
+    }
+}
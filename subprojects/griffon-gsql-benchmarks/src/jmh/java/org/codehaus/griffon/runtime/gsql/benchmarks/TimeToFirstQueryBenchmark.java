@@ -0,0 +1,205 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.core.Configuration;
+import griffon.core.GriffonApplication;
+import griffon.core.event.EventRouter;
+import griffon.core.injection.Injector;
+import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.datasource.DataSourceStorage;
+import griffon.plugins.gsql.GsqlBootstrap;
+import griffon.plugins.gsql.GsqlHandler;
+import groovy.sql.Sql;
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlFactory;
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlHandler;
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlStorage;
+import org.codehaus.griffon.runtime.gsql.GsqlResultCaches;
+import org.codehaus.griffon.runtime.gsql.GsqlTenants;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Time until every one of {@code datasources} configured datasources answered its first query,
+ * comparing the {@code bootstrap_mode} settings of {@code DefaultGsqlFactory}. The number of pool
+ * checkouts is reported as an auxiliary counter.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class TimeToFirstQueryBenchmark {
+    @Param({DefaultGsqlFactory.BOOTSTRAP_MODE_RECREATE, DefaultGsqlFactory.BOOTSTRAP_MODE_DEDICATED})
+    public String bootstrapMode;
+
+    @Param({"20"})
+    public int datasources;
+
+    private final AtomicLong checkouts = new AtomicLong();
+    private final Map<String, JdbcConnectionPool> pools = new LinkedHashMap<>();
+    private GsqlHandler gsqlHandler;
+    private int iteration;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long checkouts;
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        iteration++;
+        checkouts.set(0);
+        for (int i = 0; i < datasources; i++) {
+            String name = "ds" + i;
+            pools.put(name, JdbcConnectionPool.create("jdbc:h2:mem:gsql-ttfq-" + iteration + "-" + name + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        }
+        gsqlHandler = new DefaultGsqlHandler(newFactory(), new DefaultGsqlStorage());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        for (String name : pools.keySet()) {
+            gsqlHandler.closeSql(name);
+        }
+        pools.clear();
+    }
+
+    @Benchmark
+    public int firstQuery(Counters counters) {
+        int total = 0;
+        for (String name : pools.keySet()) {
+            total += gsqlHandler.withSql(name, callback(sql -> (Integer) sql.firstRow("SELECT 1").getAt(0)));
+        }
+        counters.checkouts = checkouts.get();
+        return total;
+    }
+
+    private DefaultGsqlFactory newFactory() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(DefaultGsqlFactory.KEY_BOOTSTRAP_MODE, bootstrapMode);
+
+        Map<String, Function<Object[], Object>> router = Collections.emptyMap();
+        final EventRouter eventRouter = Stubs.stub(EventRouter.class, router);
+        Map<String, Function<Object[], Object>> app = new HashMap<>();
+        app.put("getEventRouter", args -> eventRouter);
+
+        Map<String, Function<Object[], Object>> dsFactory = new HashMap<>();
+        dsFactory.put("getDataSourceNames", args -> pools.keySet());
+        dsFactory.put("getConfigurationFor", args -> config);
+        dsFactory.put("create", args -> counting(pools.get((String) args[0])));
+        dsFactory.put("destroy", args -> {
+            pools.get((String) args[0]).dispose();
+            return null;
+        });
+
+        final Map<String, Object> stored = new ConcurrentHashMap<>();
+        Map<String, Function<Object[], Object>> dsStorage = new HashMap<>();
+        dsStorage.put("get", args -> stored.get((String) args[0]));
+        dsStorage.put("set", args -> stored.put((String) args[0], args[1]));
+        dsStorage.put("remove", args -> stored.remove((String) args[0]));
+        dsStorage.put("getKeys", args -> stored.keySet());
+
+        final List<GsqlBootstrap> bootstraps = new ArrayList<>();
+        bootstraps.add(new StatementsBootstrap());
+        Map<String, Function<Object[], Object>> injector = new HashMap<>();
+        injector.put("getInstances", args -> bootstraps);
+
+        Map<String, Function<Object[], Object>> none = Collections.emptyMap();
+        DefaultGsqlFactory factory = new DefaultGsqlFactory(Stubs.stub(Configuration.class, none), Stubs.stub(GriffonApplication.class, app));
+        Stubs.inject(factory, "dataSourceFactory", Stubs.stub(DataSourceFactory.class, dsFactory));
+        Stubs.inject(factory, "dataSourceStorage", Stubs.stub(DataSourceStorage.class, dsStorage));
+        Stubs.inject(factory, "injector", Stubs.stub(Injector.class, injector));
+        GsqlMetrics gsqlMetrics = new GsqlMetrics();
+        Stubs.inject(factory, "gsqlMetrics", gsqlMetrics);
+        Stubs.inject(factory, "gsqlResultCaches", new GsqlResultCaches(gsqlMetrics));
+        Stubs.inject(factory, "gsqlTenants", new GsqlTenants(Stubs.stub(Configuration.class, none), Stubs.stub(DataSourceFactory.class, dsFactory)));
+        return factory;
+    }
+
+    private DataSource counting(final DataSource delegate) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            try {
+                Object result = method.invoke(delegate, args);
+                if ("getConnection".equals(method.getName())) {
+                    checkouts.incrementAndGet();
+                    // emulate a pool that validates connections on checkout
+                    ((Connection) result).isValid(1);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static final class StatementsBootstrap implements GsqlBootstrap {
+        @Override
+        public void init(String datasourceName, Sql sql) {
+            try {
+                sql.execute("CREATE TABLE IF NOT EXISTS settings (id INTEGER PRIMARY KEY, val VARCHAR(30))");
+                sql.execute("MERGE INTO settings (id, val) KEY (id) VALUES (1, 'bootstrap')");
+                sql.firstRow("SELECT val FROM settings WHERE id = 1");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void destroy(String datasourceName, Sql sql) {
+            // empty
+        }
+    }
+}
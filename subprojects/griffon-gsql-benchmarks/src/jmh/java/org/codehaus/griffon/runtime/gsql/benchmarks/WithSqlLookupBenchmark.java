@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.plugins.gsql.GsqlCallback;
+import griffon.plugins.gsql.GsqlHandle;
+import griffon.plugins.gsql.GsqlHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch overhead of {@code withSql} when the {@code Sql} instance is already stored
+ * versus when it has to be created (and destroyed) on every call, and of a call made
+ * through a {@code GsqlHandle}. Run with {@code -PjmhProfilers=gc} to compare the bytes
+ * allocated per call.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WithSqlLookupBenchmark {
+    private static final GsqlCallback<String> NOOP = (datasourceName, sql) -> datasourceName;
+
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+    private GsqlHandle handle;
+
+    @Setup
+    public void setup() {
+        fixture = new GsqlFixture(GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(NOOP);
+        handle = gsqlHandler.handle(GsqlFixture.DEFAULT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public String cached() {
+        return gsqlHandler.withSql(GsqlFixture.DEFAULT, NOOP);
+    }
+
+    @Benchmark
+    public String handle() {
+        return handle.withSql(NOOP);
+    }
+
+    @Benchmark
+    public String cold() {
+        gsqlHandler.closeSql(GsqlFixture.DEFAULT);
+        return gsqlHandler.withSql(GsqlFixture.DEFAULT, NOOP);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.benchmarks;
+
+import griffon.plugins.gsql.GsqlHandler;
+import groovy.lang.Closure;
+import groovy.sql.BatchingPreparedStatementWrapper;
+import groovy.sql.GroovyRowResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.codehaus.griffon.runtime.gsql.benchmarks.GsqlFixture.callback;
+
+/**
+ * Query workloads executed through {@code withSql}: single row lookups (also under
+ * 1/4/16/64 concurrent threads), a full {@code eachRow} scan and batched inserts.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WithSqlQueryBenchmark {
+    private static final String SELECT_ONE = "SELECT id, name, lastname FROM people WHERE id = ?";
+    private static final String INSERT = "INSERT INTO scratch (id, name) VALUES (?, ?)";
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    // eachRow runs on a single thread, one counter serves every invocation
+    private final RowCounter counter = new RowCounter();
+    private GsqlFixture fixture;
+    private GsqlHandler gsqlHandler;
+
+    @Setup
+    public void setup() {
+        fixture = new GsqlFixture(GsqlFixture.DEFAULT);
+        gsqlHandler = fixture.getGsqlHandler();
+        gsqlHandler.withSql(callback(sql -> {
+            sql.execute("DROP TABLE IF EXISTS people");
+            sql.execute("CREATE TABLE people (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL)");
+            sql.execute("INSERT INTO people (id, name, lastname) SELECT X, 'name' || X, 'lastname' || X FROM SYSTEM_RANGE(1, " + rows + ")");
+            sql.execute("DROP TABLE IF EXISTS scratch");
+            sql.execute("CREATE TABLE scratch (id INTEGER NOT NULL, name VARCHAR(30) NOT NULL)");
+            return null;
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public GroovyRowResult singleRow() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public GroovyRowResult singleRow_04threads() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public GroovyRowResult singleRow_16threads() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public GroovyRowResult singleRow_64threads() {
+        return selectOne();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long eachRow() {
+        gsqlHandler.withSql(callback(sql -> {
+            sql.eachRow("SELECT id, name, lastname FROM people", counter);
+            return null;
+        }));
+        return counter.reset();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] batchInsert() {
+        return gsqlHandler.withSql(callback(sql -> {
+            sql.execute("TRUNCATE TABLE scratch");
+            return sql.withBatch(batchSize, INSERT, new BatchFiller(batchSize * 10));
+        }));
+    }
+
+    private GroovyRowResult selectOne() {
+        final List<Object> params = Collections.<Object>singletonList(ThreadLocalRandom.current().nextInt(1, rows + 1));
+        return gsqlHandler.withSql(callback(sql -> sql.firstRow(SELECT_ONE, params)));
+    }
+
+    private static final class BatchFiller extends Closure<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final int count;
+
+        private BatchFiller(int count) {
+            super(null);
+            this.count = count;
+        }
+
+        public void doCall(BatchingPreparedStatementWrapper ps) throws SQLException {
+            for (int i = 0; i < count; i++) {
+                ps.addBatch(new Object[]{i, "name" + i});
+            }
+        }
+    }
+}
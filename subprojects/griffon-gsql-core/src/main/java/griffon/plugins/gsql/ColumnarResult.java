@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.List;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * The rows of a query stored column by column. Integer, long and floating point columns are kept in primitive
+ * arrays and character columns are dictionary encoded, each distinct value being stored once, unless most of their
+ * values are distinct. Results are read only and may be shared between threads.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ColumnarResult extends Iterable<ColumnarResult.Row> {
+    int getRowCount();
+
+    int getColumnCount();
+
+    @Nonnull
+    List<String> getColumnNames();
+
+    /**
+     * @param columnName the name of a column, case is ignored.
+     * @return the index of the column, starting at 0.
+     * @throws IllegalArgumentException if there is no such column.
+     */
+    int indexOf(@Nonnull String columnName);
+
+    @Nonnull
+    Column column(int index);
+
+    @Nonnull
+    Column column(@Nonnull String columnName);
+
+    /**
+     * @return a view of the values of a single row.
+     */
+    @Nonnull
+    Row row(int index);
+
+    enum ColumnType {
+        /**
+         * {@code TINYINT}, {@code SMALLINT} and {@code INTEGER} values, stored as {@code int}.
+         */
+        INT,
+        /**
+         * {@code BIGINT} values, stored as {@code long}.
+         */
+        LONG,
+        /**
+         * {@code REAL}, {@code FLOAT} and {@code DOUBLE} values, stored as {@code double}.
+         */
+        DOUBLE,
+        /**
+         * Character values, stored as codes into a dictionary of distinct values, or as they are when more than half
+         * of the values are distinct.
+         */
+        STRING,
+        /**
+         * Any other value, stored as returned by {@code ResultSet.getObject}.
+         */
+        OBJECT
+    }
+
+    interface Column {
+        @Nonnull
+        String getName();
+
+        @Nonnull
+        ColumnType getType();
+
+        boolean isNull(int row);
+
+        /**
+         * @return the value of an {@code INT} column, {@code 0} if it is null.
+         */
+        int getInt(int row);
+
+        /**
+         * @return the value of an {@code INT} or {@code LONG} column, {@code 0} if it is null.
+         */
+        long getLong(int row);
+
+        /**
+         * @return the value of an {@code INT}, {@code LONG} or {@code DOUBLE} column, {@code 0} if it is null.
+         */
+        double getDouble(int row);
+
+        @Nullable
+        String getString(int row);
+
+        /**
+         * @return the value of any column, boxed if needed.
+         */
+        @Nullable
+        Object get(int row);
+
+        /**
+         * @return whether this is a {@code STRING} column stored as dictionary codes.
+         */
+        boolean isDictionaryEncoded();
+
+        /**
+         * @return the dictionary code of a {@code STRING} value, an index into {@link #getDictionary()}, or
+         * {@code -1} if it is null.
+         * @throws IllegalStateException if the column is not dictionary encoded.
+         */
+        int getCode(int row);
+
+        /**
+         * @return the distinct values of a {@code STRING} column.
+         * @throws IllegalStateException if the column is not dictionary encoded.
+         */
+        @Nonnull
+        List<String> getDictionary();
+
+        /**
+         * Scans an {@code INT} column, nulls read as {@code 0}.
+         */
+        @Nonnull
+        IntStream ints();
+
+        /**
+         * Scans an {@code INT} or {@code LONG} column, nulls read as {@code 0}.
+         */
+        @Nonnull
+        LongStream longs();
+
+        /**
+         * Scans an {@code INT}, {@code LONG} or {@code DOUBLE} column, nulls read as {@code 0}.
+         */
+        @Nonnull
+        DoubleStream doubles();
+    }
+
+    interface Row {
+        int getIndex();
+
+        boolean isNull(@Nonnull String columnName);
+
+        int getInt(@Nonnull String columnName);
+
+        long getLong(@Nonnull String columnName);
+
+        double getDouble(@Nonnull String columnName);
+
+        @Nullable
+        String getString(@Nonnull String columnName);
+
+        @Nullable
+        Object get(@Nonnull String columnName);
+
+        @Nullable
+        Object get(int columnIndex);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+
+/**
+ * A datasource resolved ahead of time by {@link GsqlHandler#handle(String)}. Calls made through a handle behave like
+ * {@link GsqlHandler#withSql(String, GsqlCallback)} but skip the name validation and lookups done on every call;
+ * keep one in a field for code that calls the same datasource over and over.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface GsqlHandle {
+    @Nonnull
+    String getDatasourceName();
+
+    @Nullable
+    <R> R withSql(@Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+}
@@ -18,14 +18,26 @@
 package griffon.plugins.gsql;
 
 import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+import groovy.sql.GroovyRowResult;
+import org.reactivestreams.Publisher;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 /**
  * @author Andres Almiray
  */
 public interface GsqlHandler {
+    /**
+     * Keeps the transaction isolation level the connection is handed out with.
+     */
+    int ISOLATION_DEFAULT = -1;
+
     // tag::methods[]
     @Nullable
     <R> R withSql(@Nonnull GsqlCallback<R> callback)
@@ -35,6 +47,82 @@ public interface GsqlHandler {
     <R> R withSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback)
         throws RuntimeGsqlException;
 
+    @Nonnull
+    GsqlHandle handle();
+
+    @Nonnull
+    GsqlHandle handle(@Nonnull String datasourceName);
+
+    @Nullable
+    <R> R withIdempotentSql(@Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withIdempotentSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withReadOnlySql(@Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withReadOnlySql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String datasourceName, int isolationLevel, boolean readOnly, @Nonnull GsqlCallback<R> callback)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withSqlAsync(@Nonnull GsqlCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withSqlAsync(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback);
+
+    @Nonnull
+    Stream<GroovyRowResult> stream(@Nonnull String sql, @Nonnull List<?> params, int fetchSize)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    Stream<GroovyRowResult> stream(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    Publisher<GroovyRowResult> publish(@Nonnull String sql, @Nonnull List<?> params, int fetchSize);
+
+    @Nonnull
+    Publisher<GroovyRowResult> publish(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize);
+
+    @Nonnull
+    List<GroovyRowResult> cachedRows(@Nonnull String sql, @Nonnull List<?> params, long ttl)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    List<GroovyRowResult> cachedRows(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, long ttl)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    ColumnarResult columnar(@Nonnull String sql, @Nonnull List<?> params)
+        throws RuntimeGsqlException;
+
+    @Nonnull
+    ColumnarResult columnar(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params)
+        throws RuntimeGsqlException;
+
+    long batchInsert(@Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize)
+        throws RuntimeGsqlException;
+
+    long batchInsert(@Nonnull String datasourceName, @Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize)
+        throws RuntimeGsqlException;
+
     void closeSql();
 
     void closeSql(@Nonnull String datasourceName);
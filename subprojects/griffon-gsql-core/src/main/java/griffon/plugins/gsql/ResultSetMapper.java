@@ -0,0 +1,71 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql;
+
+import griffon.annotations.core.Nonnull;
+import groovy.lang.Closure;
+import groovy.sql.Sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Turns the rows of a {@code ResultSet} into typed objects without going through {@code GroovyRowResult}.
+ * Classes annotated with {@code @griffon.transform.gsql.GsqlRowMapper} expose a generated implementation in their
+ * {@code ROW_MAPPER} field.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ResultSetMapper<T> {
+    /**
+     * Maps every remaining row of {@code resultSet}. The result set is not closed.
+     */
+    @Nonnull
+    List<T> map(@Nonnull ResultSet resultSet) throws SQLException;
+
+    @Nonnull
+    default List<T> rows(@Nonnull Sql sql, @Nonnull String query) throws SQLException {
+        return rows(sql, query, Collections.emptyList());
+    }
+
+    /**
+     * Runs {@code query} with {@code sql} and maps the rows it returns.
+     */
+    @Nonnull
+    default List<T> rows(@Nonnull Sql sql, @Nonnull String query, @Nonnull List<?> params) throws SQLException {
+        requireNonNull(sql, "Argument 'sql' must not be null");
+        requireNonNull(query, "Argument 'query' must not be null");
+        requireNonNull(params, "Argument 'params' must not be null");
+
+        List<List<T>> result = new ArrayList<>(1);
+        sql.query(query, new ArrayList<Object>(params), new Closure<Void>(this) {
+            private static final long serialVersionUID = 1L;
+
+            public void doCall(ResultSet resultSet) throws SQLException {
+                result.add(map(resultSet));
+            }
+        });
+        return result.get(0);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Published when the circuit breaker of a datasource lets probe calls through after being open.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlCircuitHalfOpenEvent extends Event {
+    private final String name;
+
+    public GsqlCircuitHalfOpenEvent(@Nonnull String name) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public static GsqlCircuitHalfOpenEvent of(@Nonnull String name) {
+        return new GsqlCircuitHalfOpenEvent(name);
+    }
+}
@@ -34,11 +34,17 @@ public class GsqlConnectEndEvent extends Event {
     private final String name;
     private final Map<String, Object> config;
     private final Sql sql;
+    private final long warmupTime;
 
     public GsqlConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Sql sql) {
+        this(name, config, sql, 0L);
+    }
+
+    public GsqlConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Sql sql, long warmupTime) {
         this.name = requireNonBlank(name, "Argument 'name' must not be blank");
         this.config = requireNonNull(config, "Argument 'config' must not be null");
         this.sql = requireNonNull(sql, "Argument 'sql' must not be null");
+        this.warmupTime = warmupTime;
     }
 
     @Nonnull
@@ -56,8 +62,20 @@ public class GsqlConnectEndEvent extends Event {
         return sql;
     }
 
+    /**
+     * @return the time spent warming up the connection pool in milliseconds, {@code 0} if it was not warmed up.
+     */
+    public long getWarmupTime() {
+        return warmupTime;
+    }
+
     @Nonnull
     public static GsqlConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Sql sql) {
         return new GsqlConnectEndEvent(name, config, sql);
     }
+
+    @Nonnull
+    public static GsqlConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Sql sql, long warmupTime) {
+        return new GsqlConnectEndEvent(name, config, sql, warmupTime);
+    }
 }
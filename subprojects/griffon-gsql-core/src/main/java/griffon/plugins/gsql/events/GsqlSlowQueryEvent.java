@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Published when a statement takes longer than the {@code slowQueryThresholdMs} of its datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlSlowQueryEvent extends Event {
+    private final String name;
+    private final String sql;
+    private final List<Object> parameters;
+    private final long elapsedTime;
+    private final String threadName;
+
+    public GsqlSlowQueryEvent(@Nonnull String name, @Nonnull String sql, @Nonnull List<Object> parameters, long elapsedTime, @Nonnull String threadName) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.sql = requireNonNull(sql, "Argument 'sql' must not be null");
+        this.parameters = requireNonNull(parameters, "Argument 'parameters' must not be null");
+        this.elapsedTime = elapsedTime;
+        this.threadName = requireNonNull(threadName, "Argument 'threadName' must not be null");
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    @Nonnull
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the execution time of the statement in nanoseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    @Nonnull
+    public String getThreadName() {
+        return threadName;
+    }
+
+    @Nonnull
+    public static GsqlSlowQueryEvent of(@Nonnull String name, @Nonnull String sql, @Nonnull List<Object> parameters, long elapsedTime, @Nonnull String threadName) {
+        return new GsqlSlowQueryEvent(name, sql, parameters, elapsedTime, threadName);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown when a call could not obtain a permit from the bulkhead of a datasource within its {@code acquireTimeout}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlBulkheadFullException extends RuntimeGsqlException {
+    private final int maxConcurrentCalls;
+
+    public GsqlBulkheadFullException(@Nonnull String datasourceName, int maxConcurrentCalls, long acquireTimeout) {
+        super(datasourceName, "Gsql '" + datasourceName + "' rejected a call; all " + maxConcurrentCalls +
+            " permits remained in use for " + acquireTimeout + " ms");
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown without touching the database when the circuit breaker of a datasource is open.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlCircuitOpenException extends RuntimeGsqlException {
+    private final long retryAfter;
+
+    public GsqlCircuitOpenException(@Nonnull String datasourceName, long retryAfter) {
+        super(datasourceName, "Gsql '" + datasourceName + "' rejected a call; its circuit breaker is open for another " +
+            retryAfter + " ms");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the time in milliseconds until the breaker lets a probe call through.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
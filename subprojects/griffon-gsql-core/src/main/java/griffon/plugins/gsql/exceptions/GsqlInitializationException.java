@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.gsql.exceptions;
+
+import griffon.annotations.core.Nonnull;
+import griffon.exceptions.GriffonException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports every datasource that could not be initialized during startup.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlInitializationException extends GriffonException {
+    private final Map<String, Throwable> failures;
+
+    public GsqlInitializationException(@Nonnull Map<String, Throwable> failures) {
+        super(format(failures));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        for (Throwable failure : this.failures.values()) {
+            addSuppressed(failure);
+        }
+    }
+
+    @Nonnull
+    private static String format(@Nonnull Map<String, Throwable> failures) {
+        requireNonNull(failures, "Argument 'failures' must not be null");
+        return "Could not initialize gsql datasources " + failures.keySet();
+    }
+
+    /**
+     * @return the cause of failure of each datasource, keyed by datasource name.
+     */
+    @Nonnull
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+}
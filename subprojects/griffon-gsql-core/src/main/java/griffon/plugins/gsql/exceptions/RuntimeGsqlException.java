@@ -35,6 +35,11 @@ public class RuntimeGsqlException extends GriffonException {
         this.datasourceName = datasourceName;
     }
 
+    protected RuntimeGsqlException(@Nonnull String datasourceName, @Nonnull String message) {
+        super(requireNonBlank(message, "message"));
+        this.datasourceName = requireNonBlank(datasourceName, "datasourceName");
+    }
+
     @Nonnull
     private static String format(@Nonnull String datasourceName) {
         requireNonBlank(datasourceName, "datasourceName");
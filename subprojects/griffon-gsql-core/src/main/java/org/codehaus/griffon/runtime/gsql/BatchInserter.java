@@ -0,0 +1,278 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Inserts rows in JDBC batches of a fixed size, committing after every batch unless the rows join an ongoing
+ * transaction. Rows are pulled from their iterator one batch at a time; while a batch executes the next one is
+ * assembled by a helper thread, thus no more than two batches are held in memory at any time.
+ * <p>
+ * Helper threads come from a cached pool of their own rather than from the asynchronous executor of the
+ * datasource: a helper blocks until its batch is taken, and a caller already running on a bounded executor
+ * could otherwise wait forever for a helper queued behind it.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class BatchInserter {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchInserter.class);
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)*");
+    // daemon threads, idle ones are discarded after a minute
+    private static final ExecutorService PRODUCERS = Executors.newCachedThreadPool(new GsqlThreadFactory("gsql-batch"));
+    private static final int MAX_INITIAL_CAPACITY = 4096;
+    private static final Chunk END = new Chunk(new ArrayList<>(0), null);
+
+    private final String datasourceName;
+    private final String table;
+    private final int batchSize;
+    private final Iterator<? extends Map<String, ?>> rows;
+    private final String[] columns;
+    private final Map<String, ?> first;
+    private long rowNumber;
+
+    private BatchInserter(@Nonnull String datasourceName, @Nonnull String table, int batchSize, @Nonnull Iterator<? extends Map<String, ?>> rows, @Nonnull String[] columns, @Nonnull Map<String, ?> first) {
+        this.datasourceName = datasourceName;
+        this.table = table;
+        this.batchSize = batchSize;
+        this.rows = rows;
+        this.columns = columns;
+        this.first = first;
+    }
+
+    /**
+     * Checks the table, the batch size and the columns of the first row before any resource is taken.
+     *
+     * @return an inserter for the rows, {@code null} if there are none.
+     * @throws IllegalArgumentException if the arguments are invalid.
+     */
+    @Nullable
+    static BatchInserter prepare(@Nonnull String datasourceName, @Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) {
+        checkIdentifier(table);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than zero");
+        }
+
+        Iterator<? extends Map<String, ?>> iterator = rows.iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map<String, ?> first = iterator.next();
+        String[] columns = first.keySet().toArray(new String[0]);
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("Rows inserted into '" + table + "' must have at least one column");
+        }
+        for (String column : columns) {
+            checkIdentifier(column);
+        }
+
+        return new BatchInserter(datasourceName, table, batchSize, iterator, columns, first);
+    }
+
+    /**
+     * Inserts the rows on a connection of its own, committing after every batch. May be called once.
+     *
+     * @return the number of rows inserted.
+     */
+    long insert(@Nonnull DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                return insert(connection, true);
+            } catch (SQLException | RuntimeException | Error e) {
+                // a failing rollback must not hide the failure that caused it
+                try {
+                    connection.rollback();
+                } catch (SQLException re) {
+                    LOG.warn("Could not roll back batch on datasource '{}'", datasourceName, re);
+                    e.addSuppressed(re);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows on the connection of an ongoing transaction, which commits or rolls them back. May be called
+     * once.
+     *
+     * @return the number of rows inserted.
+     */
+    long insertInTransaction(@Nonnull Connection connection) throws SQLException {
+        return insert(connection, false);
+    }
+
+    private long insert(@Nonnull Connection connection, boolean commitEachBatch) throws SQLException {
+        // the first batch is built on the calling thread; small inserts never start a helper
+        Chunk chunk = nextChunk(first);
+        BlockingQueue<Chunk> queue = null;
+        Future<?> producer = null;
+        if (rows.hasNext()) {
+            queue = new ArrayBlockingQueue<>(1);
+            producer = PRODUCERS.submit(new Producer(queue));
+        }
+
+        long inserted = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insertStatement())) {
+            while (chunk != END) {
+                for (Object[] values : chunk.rows) {
+                    for (int j = 0; j < values.length; j++) {
+                        statement.setObject(j + 1, values[j]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                if (commitEachBatch) {
+                    connection.commit();
+                }
+                inserted += chunk.rows.size();
+                LOG.trace("Inserted {} rows into '{}' on datasource '{}'", inserted, table, datasourceName);
+                chunk = queue != null ? take(queue) : END;
+            }
+        } finally {
+            if (producer != null) {
+                producer.cancel(true);
+            }
+        }
+        return inserted;
+    }
+
+    @Nonnull
+    private String insertStatement() {
+        StringBuilder statement = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                statement.append(", ");
+                placeholders.append(", ");
+            }
+            statement.append(columns[i]);
+            placeholders.append('?');
+        }
+        return statement.append(") VALUES (").append(placeholders).append(')').toString();
+    }
+
+    @Nonnull
+    private Chunk nextChunk(@Nullable Map<String, ?> first) {
+        List<Object[]> values = new ArrayList<>(Math.min(batchSize, MAX_INITIAL_CAPACITY));
+        if (first != null) {
+            values.add(valuesOf(first));
+        }
+        while (values.size() < batchSize && rows.hasNext()) {
+            values.add(valuesOf(rows.next()));
+        }
+        return new Chunk(values, null);
+    }
+
+    @Nonnull
+    private Object[] valuesOf(@Nonnull Map<String, ?> row) {
+        rowNumber++;
+        if (row.size() != columns.length) {
+            throw new IllegalArgumentException("Row " + rowNumber + " for '" + table + "' has " + row.size() + " columns, expected " + columns.length);
+        }
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (!row.containsKey(columns[i])) {
+                throw new IllegalArgumentException("Row " + rowNumber + " for '" + table + "' is missing column '" + columns[i] + "'");
+            }
+            values[i] = row.get(columns[i]);
+        }
+        return values;
+    }
+
+    @Nonnull
+    private static Chunk take(@Nonnull BlockingQueue<Chunk> queue) throws SQLException {
+        Chunk chunk;
+        try {
+            chunk = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the next batch", e);
+        }
+        if (chunk.failure instanceof RuntimeException) {
+            throw (RuntimeException) chunk.failure;
+        } else if (chunk.failure instanceof Error) {
+            throw (Error) chunk.failure;
+        }
+        return chunk;
+    }
+
+    private static void checkIdentifier(@Nonnull String identifier) {
+        if (!IDENTIFIER.matcher(identifier).matches()) {
+            throw new IllegalArgumentException("'" + identifier + "' is not a valid SQL identifier");
+        }
+    }
+
+    private static final class Chunk {
+        private final List<Object[]> rows;
+        private final Throwable failure;
+
+        private Chunk(@Nonnull List<Object[]> rows, @Nullable Throwable failure) {
+            this.rows = rows;
+            this.failure = failure;
+        }
+    }
+
+    private final class Producer implements Runnable {
+        private final BlockingQueue<Chunk> queue;
+
+        private Producer(@Nonnull BlockingQueue<Chunk> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                try {
+                    while (rows.hasNext()) {
+                        queue.put(nextChunk(null));
+                    }
+                    chunk = END;
+                } catch (RuntimeException | Error e) {
+                    chunk = new Chunk(new ArrayList<>(0), e);
+                }
+                queue.put(chunk);
+            } catch (InterruptedException e) {
+                // the consumer gave up, there is nobody left to hand batches to
+            }
+        }
+    }
+}
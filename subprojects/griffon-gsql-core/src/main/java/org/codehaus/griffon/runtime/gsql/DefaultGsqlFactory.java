@@ -17,6 +17,7 @@
  */
 package org.codehaus.griffon.runtime.gsql;
 
+import com.zaxxer.hikari.HikariDataSource;
 import griffon.annotations.core.Nonnull;
 import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
@@ -29,23 +30,70 @@ import griffon.plugins.gsql.events.GsqlConnectEndEvent;
 import griffon.plugins.gsql.events.GsqlConnectStartEvent;
 import griffon.plugins.gsql.events.GsqlDisconnectEndEvent;
 import griffon.plugins.gsql.events.GsqlDisconnectStartEvent;
+import griffon.plugins.gsql.events.GsqlSlowQueryEvent;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
 import groovy.sql.Sql;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.gsql.cache.ResultCache;
+import org.codehaus.griffon.runtime.gsql.jdbc.GsqlDataSource;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQueryLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.Set;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
  */
 public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements GsqlFactory {
+    /**
+     * Configuration key that selects how {@code GsqlBootstrap}s receive their {@code Sql}.
+     *
+     * @since 3.0.0
+     */
+    public static final String KEY_BOOTSTRAP_MODE = "bootstrap_mode";
+
+    /**
+     * Bootstraps run on a datasource backed {@code Sql} which is closed and replaced by a new instance afterwards.
+     *
+     * @since 3.0.0
+     */
+    public static final String BOOTSTRAP_MODE_RECREATE = "recreate";
+
+    /**
+     * Bootstraps share a single connection checked out for them alone. Any pending transaction is rolled back
+     * and the connection's auto-commit, read-only, isolation, catalog and schema settings are restored before it
+     * is returned to the pool; a connection that cannot be restored is evicted from the pool instead. Other session
+     * state, such as session variables or temporary tables, is not reset.
+     *
+     * @since 3.0.0
+     */
+    public static final String BOOTSTRAP_MODE_DEDICATED = "dedicated";
+
+    public static final String KEY_STATEMENT_CACHE_ENABLED = "statementCache.enabled";
+    public static final String KEY_STATEMENT_CACHE_MAX_SIZE = "statementCache.maxSize";
+    private static final int DEFAULT_STATEMENT_CACHE_MAX_SIZE = 64;
+
+    public static final String KEY_SLOW_QUERY_THRESHOLD = "slowQueryThresholdMs";
+    public static final String KEY_SLOW_QUERY_SAMPLE_RATE = "slowQuerySampleRate";
+    public static final String KEY_SLOW_QUERY_REDACT_PARAMETERS = "slowQueryRedactParameters";
+    public static final String KEY_SLOW_QUERY_LOG_SIZE = "slowQueryLogSize";
+    private static final int DEFAULT_SLOW_QUERY_LOG_SIZE = 100;
+
     private static final Logger LOG = LoggerFactory.getLogger(DefaultGsqlFactory.class);
 
     @Inject
@@ -57,6 +105,15 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
     @Inject
     private Injector injector;
 
+    @Inject
+    private GsqlMetrics gsqlMetrics;
+
+    @Inject
+    private GsqlResultCaches gsqlResultCaches;
+
+    @Inject
+    private GsqlTenants gsqlTenants;
+
     @Inject
     public DefaultGsqlFactory(@Nonnull @Named("datasource") Configuration configuration, @Nonnull GriffonApplication application) {
         super(configuration, application);
@@ -71,6 +128,9 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
     @Nonnull
     @Override
     public Map<String, Object> getConfigurationFor(@Nonnull String datasourceName) {
+        if (gsqlTenants.isTenantDatasource(datasourceName)) {
+            return gsqlTenants.getConfigurationFor(datasourceName);
+        }
         return dataSourceFactory.getConfigurationFor(datasourceName);
     }
 
@@ -91,15 +151,35 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
     public Sql create(@Nonnull String name) {
         Map<String, Object> config = getConfigurationFor(name);
         event(GsqlConnectStartEvent.of(name, config));
-        Sql sql = createSql(name);
 
-        for (Object o : injector.getInstances(GsqlBootstrap.class)) {
-            ((GsqlBootstrap) o).init(name, sql);
+        Sql sql;
+        if (BOOTSTRAP_MODE_DEDICATED.equals(getConfigValueAsString(config, KEY_BOOTSTRAP_MODE, BOOTSTRAP_MODE_RECREATE))) {
+            initOnDedicatedConnection(name);
+            sql = createSql(name);
+        } else {
+            sql = createSql(name);
+            for (Object o : injector.getInstances(GsqlBootstrap.class)) {
+                ((GsqlBootstrap) o).init(name, sql);
+            }
+            sql.close();
+            sql = createSql(name);
+        }
+
+        long warmupTime;
+        try {
+            warmupTime = PoolWarmer.warmup(name, getDataSource(name), config);
+        } catch (RuntimeException e) {
+            // bootstraps have been initialized and listeners told about the connection, both see it go away
+            try {
+                destroy(name, sql);
+            } catch (RuntimeException de) {
+                e.addSuppressed(de);
+            }
+            throw e;
         }
-        sql.close();
-        sql = createSql(name);
+        gsqlMetrics.metricsFor(name).warmedUp(warmupTime);
 
-        event(GsqlConnectEndEvent.of(name, config, sql));
+        event(GsqlConnectEndEvent.of(name, config, sql, warmupTime));
         return sql;
     }
 
@@ -113,6 +193,7 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
             ((GsqlBootstrap) o).destroy(name, instance);
         }
         instance.close();
+        gsqlResultCaches.remove(name);
 
         closeDataSource(name);
 
@@ -122,10 +203,110 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
     @Nonnull
     @SuppressWarnings("ConstantConditions")
     private Sql createSql(@Nonnull String dataSourceName) {
-        return new Sql(getDataSource(dataSourceName));
+        return new Sql(decorate(dataSourceName, getDataSource(dataSourceName)));
+    }
+
+    @Nonnull
+    private DataSource decorate(@Nonnull String dataSourceName, @Nonnull DataSource dataSource) {
+        Map<String, Object> config = getConfigurationFor(dataSourceName);
+        boolean statementCache = getConfigValueAsBoolean(config, KEY_STATEMENT_CACHE_ENABLED, false);
+        ResultCache resultCache = gsqlResultCaches.configure(dataSourceName, config);
+        long slowQueryThreshold = getConfigValueAsLong(config, KEY_SLOW_QUERY_THRESHOLD, -1L);
+        if (!statementCache && resultCache == null && slowQueryThreshold < 0) {
+            return dataSource;
+        }
+
+        GsqlDataSource decorated = new GsqlDataSource(dataSourceName, dataSource);
+        if (statementCache) {
+            int maxSize = getConfigValueAsInt(config, KEY_STATEMENT_CACHE_MAX_SIZE, DEFAULT_STATEMENT_CACHE_MAX_SIZE);
+            decorated = decorated.withStatementCache(maxSize, gsqlMetrics.metricsFor(dataSourceName));
+        }
+        if (resultCache != null) {
+            // writes issued through this datasource invalidate the cached results that read the same tables
+            decorated = decorated.withWriteListener(resultCache);
+        }
+        if (slowQueryThreshold >= 0) {
+            decorated = withSlowQueryLog(dataSourceName, config, slowQueryThreshold, decorated);
+        }
+        return decorated;
+    }
+
+    @Nonnull
+    private GsqlDataSource withSlowQueryLog(@Nonnull String dataSourceName, @Nonnull Map<String, Object> config, long threshold, @Nonnull GsqlDataSource dataSource) {
+        Number sampleRate = getConfigValue(config, KEY_SLOW_QUERY_SAMPLE_RATE, 1d);
+        boolean redactParameters = getConfigValueAsBoolean(config, KEY_SLOW_QUERY_REDACT_PARAMETERS, false);
+        SlowQueryLog log = gsqlMetrics.metricsFor(dataSourceName)
+            .enableSlowQueryLog(getConfigValueAsInt(config, KEY_SLOW_QUERY_LOG_SIZE, DEFAULT_SLOW_QUERY_LOG_SIZE));
+        return dataSource.withSlowQueryListener(threshold, sampleRate.doubleValue(), redactParameters, query -> {
+            log.record(query);
+            // keep listeners off the thread that ran the statement
+            getApplication().getEventRouter().publishEventAsync(GsqlSlowQueryEvent.of(query.getDatasourceName(), query.getSql(),
+                query.getParameters(), query.getElapsedTime(), query.getThreadName()));
+        });
+    }
+
+    private void initOnDedicatedConnection(@Nonnull String dataSourceName) {
+        Iterable<?> bootstraps = injector.getInstances(GsqlBootstrap.class);
+        if (!bootstraps.iterator().hasNext()) {
+            return;
+        }
+
+        DataSource dataSource = getDataSource(dataSourceName);
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RuntimeGsqlException(dataSourceName, e);
+        }
+        SessionState state;
+        try {
+            state = SessionState.capture(connection);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                connection.close();
+            } catch (SQLException ce) {
+                e.addSuppressed(ce);
+            }
+            throw new RuntimeGsqlException(dataSourceName, e);
+        }
+
+        // closing this Sql closes the connection, returning it to the pool
+        Sql sql = new Sql(connection);
+        try {
+            for (Object o : bootstraps) {
+                ((GsqlBootstrap) o).init(dataSourceName, sql);
+            }
+        } finally {
+            try {
+                state.restore(connection);
+            } catch (SQLException | RuntimeException e) {
+                LOG.warn("Could not reset session state of bootstrap connection for datasource '{}', evicting it", dataSourceName, e);
+                evict(dataSourceName, dataSource, connection);
+            }
+            sql.close();
+        }
+    }
+
+    /**
+     * Keeps a connection with unknown session state from going back to the pool.
+     */
+    private static void evict(@Nonnull String dataSourceName, @Nonnull DataSource dataSource, @Nonnull Connection connection) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                dataSource.unwrap(HikariDataSource.class).evictConnection(connection);
+            } else {
+                connection.abort(Runnable::run);
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Could not evict bootstrap connection for datasource '{}'", dataSourceName, e);
+        }
     }
 
     private void closeDataSource(@Nonnull String dataSourceName) {
+        if (gsqlTenants.isTenantDatasource(dataSourceName)) {
+            gsqlTenants.closeDataSource(dataSourceName);
+            return;
+        }
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
         if (dataSource != null) {
             dataSourceFactory.destroy(dataSourceName, dataSource);
@@ -135,6 +316,9 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
 
     @Nonnull
     private DataSource getDataSource(@Nonnull String dataSourceName) {
+        if (gsqlTenants.isTenantDatasource(dataSourceName)) {
+            return gsqlTenants.getDataSource(dataSourceName);
+        }
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
         if (dataSource == null) {
             dataSource = dataSourceFactory.create(dataSourceName);
@@ -142,4 +326,47 @@ public class DefaultGsqlFactory extends AbstractObjectFactory<Sql> implements Gs
         }
         return dataSource;
     }
+
+    private static final class SessionState {
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private final int transactionIsolation;
+        private final String catalog;
+        private final String schema;
+
+        private SessionState(boolean autoCommit, boolean readOnly, int transactionIsolation, String catalog, String schema) {
+            this.autoCommit = autoCommit;
+            this.readOnly = readOnly;
+            this.transactionIsolation = transactionIsolation;
+            this.catalog = catalog;
+            this.schema = schema;
+        }
+
+        @Nonnull
+        private static SessionState capture(@Nonnull Connection connection) throws SQLException {
+            return new SessionState(connection.getAutoCommit(), connection.isReadOnly(),
+                connection.getTransactionIsolation(), connection.getCatalog(), connection.getSchema());
+        }
+
+        private void restore(@Nonnull Connection connection) throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            if (connection.getAutoCommit() != autoCommit) {
+                connection.setAutoCommit(autoCommit);
+            }
+            if (connection.isReadOnly() != readOnly) {
+                connection.setReadOnly(readOnly);
+            }
+            if (connection.getTransactionIsolation() != transactionIsolation) {
+                connection.setTransactionIsolation(transactionIsolation);
+            }
+            if (catalog != null && !catalog.equals(connection.getCatalog())) {
+                connection.setCatalog(catalog);
+            }
+            if (schema != null && !schema.equals(connection.getSchema())) {
+                connection.setSchema(schema);
+            }
+        }
+    }
 }
@@ -17,18 +17,38 @@
  */
 package org.codehaus.griffon.runtime.gsql;
 
+import griffon.plugins.gsql.ColumnarResult;
 import griffon.plugins.gsql.GsqlCallback;
 import griffon.plugins.gsql.GsqlFactory;
+import griffon.plugins.gsql.GsqlHandle;
 import griffon.plugins.gsql.GsqlHandler;
 import griffon.plugins.gsql.GsqlStorage;
 import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+import groovy.sql.GroovyRowResult;
 import groovy.sql.Sql;
+import org.codehaus.griffon.runtime.gsql.cache.ResultCache;
+import org.codehaus.griffon.runtime.gsql.columnar.DefaultColumnarResult;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
@@ -40,14 +60,78 @@ public class DefaultGsqlHandler implements GsqlHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultGsqlHandler.class);
     private static final String ERROR_DATASOURCE_NAME_BLANK = "Argument 'datasourceName' must not be blank";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final int RETIRED = -1;
+    private static final int HEALTH_CHECK_TIMEOUT = 2;
 
     private final GsqlFactory gsqlFactory;
     private final GsqlStorage gsqlStorage;
+    private final GsqlExecutors gsqlExecutors;
+    private final GsqlBulkheads gsqlBulkheads;
+    private final GsqlMetrics gsqlMetrics;
+    private final GsqlReplicas gsqlReplicas;
+    private final GsqlResultCaches gsqlResultCaches;
+    private final GsqlIdleSweeper gsqlIdleSweeper;
+    private final GsqlCircuitBreakers gsqlCircuitBreakers;
+    private final GsqlRetries gsqlRetries;
+    private final GsqlScopes gsqlScopes;
+    // one lock per datasource, a slow connect never holds up the creation or closing of another datasource
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Sql>> transactions = new ThreadLocal<>();
+    private final Map<String, Handle> handles = new ConcurrentHashMap<>();
+    // bumped whenever the Sql of a datasource is closed, its handles resolve their Sql again when it changes
+    private final Map<String, AtomicInteger> generations = new ConcurrentHashMap<>();
 
-    @Inject
     public DefaultGsqlHandler(@Nonnull GsqlFactory gsqlFactory, @Nonnull GsqlStorage gsqlStorage) {
+        this(gsqlFactory, gsqlStorage, new GsqlMetrics());
+    }
+
+    private DefaultGsqlHandler(@Nonnull GsqlFactory gsqlFactory, @Nonnull GsqlStorage gsqlStorage, @Nonnull GsqlMetrics gsqlMetrics) {
+        this(gsqlFactory, gsqlStorage, new GsqlExecutors(gsqlFactory), new GsqlBulkheads(gsqlFactory), gsqlMetrics,
+            new GsqlReplicas(gsqlFactory, gsqlMetrics), new GsqlResultCaches(gsqlMetrics), new GsqlIdleSweeper(gsqlFactory),
+            new GsqlCircuitBreakers(gsqlFactory), new GsqlRetries(gsqlFactory),
+            new GsqlScopes(gsqlFactory));
+    }
+
+    public DefaultGsqlHandler(@Nonnull GsqlFactory gsqlFactory,
+                              @Nonnull GsqlStorage gsqlStorage,
+                              @Nonnull GsqlExecutors gsqlExecutors,
+                              @Nonnull GsqlBulkheads gsqlBulkheads,
+                              @Nonnull GsqlMetrics gsqlMetrics,
+                              @Nonnull GsqlReplicas gsqlReplicas,
+                              @Nonnull GsqlResultCaches gsqlResultCaches,
+                              @Nonnull GsqlIdleSweeper gsqlIdleSweeper,
+                              @Nonnull GsqlCircuitBreakers gsqlCircuitBreakers,
+                              @Nonnull GsqlRetries gsqlRetries,
+                              @Nonnull GsqlScopes gsqlScopes) {
         this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
         this.gsqlStorage = requireNonNull(gsqlStorage, "Argument 'gsqlStorage' must not be null");
+        this.gsqlExecutors = requireNonNull(gsqlExecutors, "Argument 'gsqlExecutors' must not be null");
+        this.gsqlBulkheads = requireNonNull(gsqlBulkheads, "Argument 'gsqlBulkheads' must not be null");
+        this.gsqlMetrics = requireNonNull(gsqlMetrics, "Argument 'gsqlMetrics' must not be null");
+        this.gsqlReplicas = requireNonNull(gsqlReplicas, "Argument 'gsqlReplicas' must not be null");
+        this.gsqlResultCaches = requireNonNull(gsqlResultCaches, "Argument 'gsqlResultCaches' must not be null");
+        this.gsqlIdleSweeper = requireNonNull(gsqlIdleSweeper, "Argument 'gsqlIdleSweeper' must not be null");
+        this.gsqlCircuitBreakers = requireNonNull(gsqlCircuitBreakers, "Argument 'gsqlCircuitBreakers' must not be null");
+        this.gsqlRetries = requireNonNull(gsqlRetries, "Argument 'gsqlRetries' must not be null");
+        this.gsqlScopes = requireNonNull(gsqlScopes, "Argument 'gsqlScopes' must not be null");
+    }
+
+    @Inject
+    public DefaultGsqlHandler(@Nonnull GsqlFactory gsqlFactory,
+                              @Nonnull GsqlStorage gsqlStorage,
+                              @Nonnull GsqlExecutors gsqlExecutors,
+                              @Nonnull GsqlBulkheads gsqlBulkheads,
+                              @Nonnull GsqlMetrics gsqlMetrics,
+                              @Nonnull GsqlReplicas gsqlReplicas,
+                              @Nonnull GsqlResultCaches gsqlResultCaches,
+                              @Nonnull GsqlIdleSweeper gsqlIdleSweeper,
+                              @Nonnull GsqlCircuitBreakers gsqlCircuitBreakers,
+                              @Nonnull GsqlRetries gsqlRetries,
+                              @Nonnull GsqlScopes gsqlScopes,
+                              @Nonnull GsqlTenants gsqlTenants) {
+        this(gsqlFactory, gsqlStorage, gsqlExecutors, gsqlBulkheads, gsqlMetrics, gsqlReplicas, gsqlResultCaches,
+            gsqlIdleSweeper, gsqlCircuitBreakers, gsqlRetries, gsqlScopes);
+        requireNonNull(gsqlTenants, "Argument 'gsqlTenants' must not be null").setEvictor(new TenantEvictor());
     }
 
     @Nullable
@@ -61,13 +145,369 @@ public class DefaultGsqlHandler implements GsqlHandler {
     public <R> R withSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
         requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
-        Sql sql = getSql(datasourceName);
+        return execute(datasourceName, sql -> callback.handle(datasourceName, sql));
+    }
+
+    @Nonnull
+    @Override
+    public GsqlHandle handle() {
+        return handle(DefaultGsqlFactory.KEY_DEFAULT);
+    }
+
+    @Nonnull
+    @Override
+    public GsqlHandle handle(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        Handle handle = handles.get(datasourceName);
+        if (handle == null) {
+            handle = handles.computeIfAbsent(datasourceName, Handle::new);
+        }
+        return handle;
+    }
+
+    @Nullable
+    @Override
+    public <R> R withIdempotentSql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return withIdempotentSql(DefaultGsqlFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withIdempotentSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        if (transactionalSql(datasourceName) != null) {
+            // a failure aborts the enclosing transaction, only the transaction as a whole can be made again
+            return withSql(datasourceName, callback);
+        }
+
+        GsqlRetries.RetryPolicy policy = gsqlRetries.policyFor(datasourceName);
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return withSql(datasourceName, callback);
+            } catch (RuntimeGsqlException e) {
+                if (!policy.isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= policy.getMaxAttempts()) {
+                    metrics.retriesExhausted();
+                    throw e;
+                }
+                long delay = policy.delayFor(attempt);
+                LOG.debug("Attempt {} on datasource '{}' failed, retrying in {} ms", attempt, datasourceName, delay, e);
+                metrics.retried();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(ie);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withReadOnlySql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return withReadOnlySql(DefaultGsqlFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withReadOnlySql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        // inside a transaction reads stay on its connection so that they see its writes
+        String replicaName = transactionalSql(datasourceName) == null ? gsqlReplicas.select(datasourceName, this::isReachable) : null;
+        if (replicaName != null) {
+            try {
+                return withSql(replicaName, callback);
+            } catch (RuntimeException e) {
+                if (!gsqlReplicas.reportFailure(datasourceName, replicaName, e)) {
+                    throw e;
+                }
+                LOG.debug("Replica '{}' failed, retrying on datasource '{}'", replicaName, datasourceName);
+            }
+        }
+        return withSql(datasourceName, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return withTransaction(DefaultGsqlFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return withTransaction(datasourceName, ISOLATION_DEFAULT, false, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String datasourceName, int isolationLevel, boolean readOnly, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        if (transactionalSql(datasourceName) != null) {
+            // nested transactions join the outer one, their hints are ignored
+            return withSql(datasourceName, callback);
+        }
+
+        return execute(datasourceName, shared -> {
+            DataSource dataSource = shared.getDataSource();
+            if (dataSource == null) {
+                throw new IllegalStateException("Sql for datasource '" + datasourceName + "' is not backed by a DataSource");
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                int isolation = connection.getTransactionIsolation();
+                boolean wasReadOnly = connection.isReadOnly();
+                Map<String, Sql> bound = transactions.get();
+                if (bound == null) {
+                    bound = new HashMap<>();
+                    transactions.set(bound);
+                }
+                try {
+                    connection.setAutoCommit(false);
+                    if (isolationLevel != ISOLATION_DEFAULT) {
+                        connection.setTransactionIsolation(isolationLevel);
+                    }
+                    if (readOnly) {
+                        connection.setReadOnly(true);
+                    }
+                    Sql sql = new Sql(connection);
+                    bound.put(datasourceName, sql);
+                    LOG.debug("Starting transaction on datasource '{}'", datasourceName);
+                    R result;
+                    try {
+                        result = callback.handle(datasourceName, sql);
+                        connection.commit();
+                    } catch (Throwable e) {
+                        // Groovy callbacks may throw undeclared checked exceptions, restoring auto commit
+                        // without a rollback would commit their partial work
+                        rollback(datasourceName, connection, e);
+                        throw e;
+                    }
+                    return result;
+                } finally {
+                    bound.remove(datasourceName);
+                    if (bound.isEmpty()) {
+                        transactions.remove();
+                    }
+                    // the transaction has ended, the connection goes back to the pool as it was handed out
+                    restore(datasourceName, connection, wasReadOnly, isolation, autoCommit);
+                }
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSqlAsync(@Nonnull GsqlCallback<R> callback) {
+        return withSqlAsync(DefaultGsqlFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSqlAsync(@Nonnull final String datasourceName, @Nonnull final GsqlCallback<R> callback) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return CompletableFuture.supplyAsync(() -> withSql(datasourceName, callback), gsqlExecutors.executorFor(datasourceName));
+    }
+
+    @Nonnull
+    @Override
+    public Stream<GroovyRowResult> stream(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+        return stream(DefaultGsqlFactory.KEY_DEFAULT, sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<GroovyRowResult> stream(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(params, "Argument 'params' must not be null");
+        Sql transactional = transactionalSql(datasourceName);
+        if (transactional != null) {
+            return streamInTransaction(datasourceName, transactional, sql, params, fetchSize);
+        }
+
+        GsqlCircuitBreakers.CircuitBreaker circuitBreaker = gsqlCircuitBreakers.circuitBreakerFor(datasourceName);
+        int permit = circuitBreaker.acquire();
+        GsqlBulkheads.Bulkhead bulkhead = gsqlBulkheads.bulkheadFor(datasourceName);
         try {
-            LOG.debug("Executing statements on datasource '{}'", datasourceName);
-            return callback.handle(datasourceName, sql);
-        } catch (Exception e) {
-            throw new RuntimeGsqlException(datasourceName, e);
+            bulkhead.acquire();
+        } catch (RuntimeException e) {
+            circuitBreaker.release(permit, e);
+            throw e;
         }
+        GsqlIdleSweeper.Lease lease = gsqlIdleSweeper.acquire(datasourceName);
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+        long startedAt = metrics.callStarted();
+        // the stream holds a connection, a bulkhead permit and an in-flight slot until it is closed
+        ResultSetSpliterator rows;
+        try {
+            LOG.debug("Streaming rows from datasource '{}'", datasourceName);
+            rows = ResultSetSpliterator.open(datasourceName, getDataSource(datasourceName), sql, params, fetchSize);
+        } catch (SQLException | RuntimeException e) {
+            metrics.callEnded(startedAt, true);
+            gsqlIdleSweeper.release(lease);
+            bulkhead.release();
+            circuitBreaker.release(permit, e);
+            throw e instanceof RuntimeGsqlException ? (RuntimeGsqlException) e : new RuntimeGsqlException(datasourceName, e);
+        }
+
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rows.close();
+            } finally {
+                metrics.callEnded(startedAt, rows.isFailed());
+                gsqlIdleSweeper.release(lease);
+                bulkhead.release();
+                circuitBreaker.release(permit, rows.getFailure());
+            }
+        });
+    }
+
+    @Nonnull
+    private Stream<GroovyRowResult> streamInTransaction(@Nonnull String datasourceName, @Nonnull Sql transactional, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+        // rows are read on the connection of the transaction and under the permits it already holds
+        GsqlIdleSweeper.Lease lease = gsqlIdleSweeper.acquire(datasourceName);
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+        long startedAt = metrics.callStarted();
+        ResultSetSpliterator rows;
+        try {
+            LOG.debug("Streaming rows from datasource '{}' within a transaction", datasourceName);
+            rows = ResultSetSpliterator.openInTransaction(datasourceName, transactional.getConnection(), sql, params, fetchSize);
+        } catch (SQLException | RuntimeException e) {
+            metrics.callEnded(startedAt, true);
+            gsqlIdleSweeper.release(lease);
+            throw e instanceof RuntimeGsqlException ? (RuntimeGsqlException) e : new RuntimeGsqlException(datasourceName, e);
+        }
+
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rows.close();
+            } finally {
+                metrics.callEnded(startedAt, rows.isFailed());
+                gsqlIdleSweeper.release(lease);
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Publisher<GroovyRowResult> publish(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+        return publish(DefaultGsqlFactory.KEY_DEFAULT, sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Publisher<GroovyRowResult> publish(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(params, "Argument 'params' must not be null");
+        // every subscriber runs the query on a cursor of its own, advanced only as far as it has requested
+        List<Object> arguments = new ArrayList<>(params);
+        return new StreamPublisher<>(() -> stream(datasourceName, sql, arguments, fetchSize), gsqlExecutors.executorFor(datasourceName));
+    }
+
+    @Override
+    public long batchInsert(@Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+        return batchInsert(DefaultGsqlFactory.KEY_DEFAULT, table, rows, batchSize);
+    }
+
+    @Override
+    public long batchInsert(@Nonnull String datasourceName, @Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(table, "Argument 'table' must not be blank");
+        requireNonNull(rows, "Argument 'rows' must not be null");
+        // invalid arguments are reported before a permit or a connection is taken
+        BatchInserter inserter = BatchInserter.prepare(datasourceName, table, rows, batchSize);
+        if (inserter == null) {
+            return 0;
+        }
+        if (transactionalSql(datasourceName) != null) {
+            // the rows join the transaction, which commits or rolls them back along with the rest of its work
+            return execute(datasourceName, s -> inserter.insertInTransaction(s.getConnection()));
+        }
+
+        GsqlCircuitBreakers.CircuitBreaker circuitBreaker = gsqlCircuitBreakers.circuitBreakerFor(datasourceName);
+        int permit = circuitBreaker.acquire();
+        Throwable failure = null;
+        try {
+            GsqlBulkheads.Bulkhead bulkhead = gsqlBulkheads.bulkheadFor(datasourceName);
+            bulkhead.acquire();
+            GsqlIdleSweeper.Lease lease = gsqlIdleSweeper.acquire(datasourceName);
+            DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+            long startedAt = metrics.callStarted();
+            boolean failed = true;
+            try {
+                LOG.debug("Inserting rows into '{}' on datasource '{}'", table, datasourceName);
+                long inserted = inserter.insert(getDataSource(datasourceName));
+                failed = false;
+                return inserted;
+            } catch (SQLException | RuntimeException e) {
+                // rows found malformed halfway through fail like any other statement
+                throw e instanceof RuntimeGsqlException ? (RuntimeGsqlException) e : new RuntimeGsqlException(datasourceName, e);
+            } finally {
+                metrics.callEnded(startedAt, failed);
+                gsqlIdleSweeper.release(lease);
+                bulkhead.release();
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            circuitBreaker.release(permit, failure);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<GroovyRowResult> cachedRows(@Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+        return cachedRows(DefaultGsqlFactory.KEY_DEFAULT, sql, params, ttl);
+    }
+
+    @Nonnull
+    @Override
+    public List<GroovyRowResult> cachedRows(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(params, "Argument 'params' must not be null");
+
+        // the cache of a datasource is set up when its Sql is created
+        getSql(datasourceName);
+        ResultCache cache = gsqlResultCaches.cacheFor(datasourceName);
+        // rows read inside a transaction may include writes that are not committed yet
+        if (cache == null || transactionalSql(datasourceName) != null) {
+            return execute(datasourceName, s -> s.rows(sql, new ArrayList<>(params)));
+        }
+
+        List<GroovyRowResult> rows = cache.get(sql, params);
+        if (rows == null) {
+            long version = cache.version();
+            rows = cache.put(sql, params, execute(datasourceName, s -> s.rows(sql, new ArrayList<>(params))), ttl, version);
+        }
+        return rows;
+    }
+
+    @Nonnull
+    @Override
+    public ColumnarResult columnar(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+        return columnar(DefaultGsqlFactory.KEY_DEFAULT, sql, params);
+    }
+
+    @Nonnull
+    @Override
+    public ColumnarResult columnar(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(params, "Argument 'params' must not be null");
+        return execute(datasourceName, s -> DefaultColumnarResult.read(s, sql, params));
     }
 
     @Override
@@ -77,20 +517,309 @@ public class DefaultGsqlHandler implements GsqlHandler {
 
     @Override
     public void closeSql(@Nonnull String datasourceName) {
-        Sql sql = gsqlStorage.get(datasourceName);
-        if (sql != null) {
-            gsqlFactory.destroy(datasourceName, sql);
-            gsqlStorage.remove(datasourceName);
+        Object lock = lockFor(datasourceName);
+        synchronized (lock) {
+            if (locks.get(datasourceName) != lock) {
+                // dropped by forgetSql while this thread waited, the datasource is already closed
+                return;
+            }
+            AtomicInteger generation = generations.get(datasourceName);
+            if (generation != null) {
+                generation.incrementAndGet();
+            }
+            handles.remove(datasourceName);
+            Sql sql = gsqlStorage.get(datasourceName);
+            if (sql != null) {
+                // instances handed out per thread share the pool that is about to go away
+                gsqlScopes.close(datasourceName);
+                gsqlFactory.destroy(datasourceName, sql);
+                gsqlStorage.remove(datasourceName);
+            }
+        }
+    }
+
+    /**
+     * Closes a datasource that is not expected to be used again, such as the datasource of an evicted tenant,
+     * and drops the statistics, permits, policies and executor kept for it.
+     */
+    void forgetSql(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        Object lock = lockFor(datasourceName);
+        synchronized (lock) {
+            closeSql(datasourceName);
+            gsqlIdleSweeper.forget(datasourceName);
+            gsqlScopes.forget(datasourceName);
+            gsqlBulkheads.forget(datasourceName);
+            gsqlCircuitBreakers.forget(datasourceName);
+            gsqlRetries.forget(datasourceName);
+            gsqlReplicas.forget(datasourceName);
+            gsqlMetrics.forget(datasourceName);
+            // handles still held by callers go through the regular lookups from now on
+            AtomicInteger generation = generations.remove(datasourceName);
+            if (generation != null) {
+                generation.set(RETIRED);
+            }
+            locks.remove(datasourceName, lock);
+        }
+        gsqlExecutors.forget(datasourceName);
+    }
+
+    @Nullable
+    private <R> R execute(@Nonnull String datasourceName, @Nonnull SqlWork<R> work) {
+        // calls joining a transaction run on its connection and under the permits it already holds
+        Sql transactional = transactionalSql(datasourceName);
+        if (transactional != null) {
+            return execute(datasourceName, transactional, null, work);
+        }
+
+        GsqlCircuitBreakers.CircuitBreaker circuitBreaker = gsqlCircuitBreakers.circuitBreakerFor(datasourceName);
+        int permit = circuitBreaker.acquire();
+        Throwable failure = null;
+        try {
+            return execute(datasourceName, null, gsqlBulkheads.bulkheadFor(datasourceName), work);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            circuitBreaker.release(permit, failure);
+        }
+    }
+
+    @Nullable
+    private <R> R execute(@Nonnull String datasourceName, @Nullable Sql transactional, @Nullable GsqlBulkheads.Bulkhead bulkhead, @Nonnull SqlWork<R> work) {
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+        GsqlIdleSweeper.Lease lease = gsqlIdleSweeper.acquire(datasourceName);
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+        long startedAt = metrics.callStarted();
+        boolean failed = true;
+        try {
+            GsqlScopes.SqlScope scope = transactional != null ? null : gsqlScopes.scopeFor(datasourceName);
+            Sql sql = scope != null ? scope.acquire(getSql(datasourceName)) : transactional;
+            try {
+                LOG.debug("Executing statements on datasource '{}'", datasourceName);
+                R result = work.execute(sql);
+                failed = false;
+                return result;
+            } catch (Exception e) {
+                throw new RuntimeGsqlException(datasourceName, e);
+            } finally {
+                if (scope != null) {
+                    scope.release(sql);
+                }
+            }
+        } finally {
+            metrics.callEnded(startedAt, failed);
+            gsqlIdleSweeper.release(lease);
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    @Nullable
+    private Sql transactionalSql(@Nonnull String datasourceName) {
+        Map<String, Sql> bound = transactions.get();
+        return bound != null ? bound.get(datasourceName) : null;
+    }
+
+    private static void rollback(@Nonnull String datasourceName, @Nonnull Connection connection, @Nonnull Throwable cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOG.warn("Could not roll back transaction on datasource '{}'", datasourceName, e);
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void restore(@Nonnull String datasourceName, @Nonnull Connection connection, boolean readOnly, int isolation, boolean autoCommit) {
+        try {
+            connection.setReadOnly(readOnly);
+            connection.setTransactionIsolation(isolation);
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            // the outcome of the transaction is settled, a failure here must not replace it
+            LOG.warn("Could not restore connection settings of datasource '{}'", datasourceName, e);
         }
     }
 
     @Nonnull
     private Sql getSql(@Nonnull String datasourceName) {
+        // fast path: readers of an existing instance never take a lock
         Sql sql = gsqlStorage.get(datasourceName);
-        if (sql == null) {
-            sql = gsqlFactory.create(datasourceName);
-            gsqlStorage.set(datasourceName, sql);
+        while (sql == null) {
+            Object lock = lockFor(datasourceName);
+            synchronized (lock) {
+                // a lock dropped by forgetSql while this thread waited no longer guards the name, take the new one
+                if (locks.get(datasourceName) == lock) {
+                    sql = gsqlStorage.get(datasourceName);
+                    if (sql == null) {
+                        sql = gsqlFactory.create(datasourceName);
+                        gsqlStorage.set(datasourceName, sql);
+                        gsqlIdleSweeper.watch(datasourceName, this::closeSql);
+                    }
+                }
+            }
         }
         return sql;
     }
+
+    private boolean isReachable(@Nonnull String datasourceName) {
+        GsqlIdleSweeper.Lease lease = gsqlIdleSweeper.acquire(datasourceName);
+        try (Connection connection = getDataSource(datasourceName).getConnection()) {
+            return connection.isValid(HEALTH_CHECK_TIMEOUT);
+        } catch (SQLException e) {
+            LOG.debug("Datasource '{}' is not reachable", datasourceName, e);
+            return false;
+        } finally {
+            gsqlIdleSweeper.release(lease);
+        }
+    }
+
+    @Nonnull
+    private DataSource getDataSource(@Nonnull String datasourceName) {
+        DataSource dataSource = getSql(datasourceName).getDataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("Datasource '" + datasourceName + "' is not backed by a DataSource");
+        }
+        return dataSource;
+    }
+
+    @Nonnull
+    private AtomicInteger generationFor(@Nonnull String datasourceName) {
+        AtomicInteger generation = generations.get(datasourceName);
+        if (generation == null) {
+            generation = generations.computeIfAbsent(datasourceName, k -> new AtomicInteger());
+        }
+        return generation;
+    }
+
+    @Nonnull
+    private Object lockFor(@Nonnull String datasourceName) {
+        Object lock = locks.get(datasourceName);
+        if (lock == null) {
+            lock = locks.computeIfAbsent(datasourceName, k -> new Object());
+        }
+        return lock;
+    }
+
+    /**
+     * Resolves everything a call needs up front. The Sql is looked up again only after its datasource is closed;
+     * once the datasource is forgotten calls fall back to {@link DefaultGsqlHandler#withSql(String, GsqlCallback)}.
+     */
+    private final class Handle implements GsqlHandle {
+        private final String datasourceName;
+        private final DatasourceMetrics metrics;
+        private final GsqlBulkheads.Bulkhead bulkhead;
+        private final GsqlCircuitBreakers.CircuitBreaker circuitBreaker;
+        private final GsqlIdleSweeper.Lease lease;
+        private final GsqlScopes.SqlScope scope;
+        private final AtomicInteger generation;
+        private volatile ResolvedSql resolved;
+
+        private Handle(@Nonnull String datasourceName) {
+            this.datasourceName = datasourceName;
+            this.metrics = gsqlMetrics.metricsFor(datasourceName);
+            this.bulkhead = gsqlBulkheads.bulkheadFor(datasourceName);
+            this.circuitBreaker = gsqlCircuitBreakers.circuitBreakerFor(datasourceName);
+            this.lease = gsqlIdleSweeper.leaseFor(datasourceName);
+            this.scope = gsqlScopes.scopeFor(datasourceName);
+            this.generation = generationFor(datasourceName);
+        }
+
+        @Nonnull
+        @Override
+        public String getDatasourceName() {
+            return datasourceName;
+        }
+
+        @Nullable
+        @Override
+        public <R> R withSql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+            requireNonNull(callback, ERROR_CALLBACK_NULL);
+            if (generation.get() == RETIRED || transactionalSql(datasourceName) != null) {
+                return DefaultGsqlHandler.this.withSql(datasourceName, callback);
+            }
+
+            int permit = circuitBreaker.acquire();
+            Throwable failure = null;
+            try {
+                bulkhead.acquire();
+                gsqlIdleSweeper.acquire(lease);
+                long startedAt = metrics.callStarted();
+                boolean failed = true;
+                try {
+                    Sql sql = scope.acquire(resolveSql());
+                    try {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Executing statements on datasource '{}'", datasourceName);
+                        }
+                        R result = callback.handle(datasourceName, sql);
+                        failed = false;
+                        return result;
+                    } catch (Exception e) {
+                        throw new RuntimeGsqlException(datasourceName, e);
+                    } finally {
+                        scope.release(sql);
+                    }
+                } finally {
+                    metrics.callEnded(startedAt, failed);
+                    gsqlIdleSweeper.release(lease);
+                    bulkhead.release();
+                }
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                circuitBreaker.release(permit, failure);
+            }
+        }
+
+        @Nonnull
+        private Sql resolveSql() {
+            // the generation is read first, a close racing with the lookup leaves a stale mark behind
+            int mark = generation.get();
+            ResolvedSql current = resolved;
+            if (current == null || current.generation != mark) {
+                current = new ResolvedSql(getSql(datasourceName), mark);
+                resolved = current;
+            }
+            return current.sql;
+        }
+    }
+
+    private static final class ResolvedSql {
+        private final Sql sql;
+        private final int generation;
+
+        private ResolvedSql(@Nonnull Sql sql, int generation) {
+            this.sql = sql;
+            this.generation = generation;
+        }
+    }
+
+    private final class TenantEvictor implements GsqlTenants.Evictor {
+        @Override
+        public long useCount(@Nonnull String datasourceName) {
+            DatasourceMetrics metrics = gsqlMetrics.metricsFor(datasourceName);
+            // calls started so far
+            return metrics.getCalls() + metrics.getInFlight();
+        }
+
+        @Override
+        public boolean isBusy(@Nonnull String datasourceName) {
+            return gsqlMetrics.metricsFor(datasourceName).getInFlight() > 0;
+        }
+
+        @Override
+        public void evict(@Nonnull String datasourceName) {
+            // state kept per datasource would otherwise grow with every tenant ever seen
+            forgetSql(datasourceName);
+        }
+    }
+
+    private interface SqlWork<R> {
+        R execute(@Nonnull Sql sql) throws Exception;
+    }
 }
@@ -19,24 +19,24 @@ package org.codehaus.griffon.runtime.gsql;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.inject.DependsOn;
+import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.events.StartupStartEvent;
-import griffon.plugins.gsql.GsqlCallback;
 import griffon.plugins.gsql.GsqlFactory;
 import griffon.plugins.gsql.GsqlHandler;
 import griffon.plugins.gsql.GsqlStorage;
 import griffon.plugins.monitor.MBeanManager;
-import groovy.sql.Sql;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.codehaus.griffon.runtime.gsql.monitor.GsqlMetricsMonitor;
 import org.codehaus.griffon.runtime.gsql.monitor.GsqlStorageMonitor;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Map;
-
-import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * @author Andres Almiray
@@ -44,6 +44,16 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("gsql")
 public class GsqlAddon extends AbstractGriffonAddon {
+    private static final String KEY_STARTUP_PARALLEL = "gsql.startup.parallel";
+    private static final String KEY_STARTUP_PARALLELISM = "gsql.startup.parallelism";
+    private static final String KEY_STARTUP_TIMEOUT = "gsql.startup.timeout";
+    private static final long DEFAULT_STARTUP_TIMEOUT = 60_000L;
+    private static final String KEY_SHUTDOWN_PARALLEL = "gsql.shutdown.parallel";
+    private static final String KEY_SHUTDOWN_TIMEOUT = "gsql.shutdown.timeout";
+    private static final String KEY_SHUTDOWN_DATASOURCE_TIMEOUT = "gsql.shutdown.datasourceTimeout";
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 30_000L;
+    private static final long DEFAULT_SHUTDOWN_DATASOURCE_TIMEOUT = 10_000L;
+
     @Inject
     private GsqlHandler gsqlHandler;
 
@@ -53,36 +63,72 @@ public class GsqlAddon extends AbstractGriffonAddon {
     @Inject
     private GsqlStorage gsqlStorage;
 
+    @Inject
+    private GsqlExecutors gsqlExecutors;
+
+    @Inject
+    private GsqlBulkheads gsqlBulkheads;
+
+    @Inject
+    private GsqlCircuitBreakers gsqlCircuitBreakers;
+
+    @Inject
+    private GsqlMetrics gsqlMetrics;
+
+    @Inject
+    private GsqlIdleSweeper gsqlIdleSweeper;
+
+    @Inject
+    private GsqlReplicas gsqlReplicas;
+
+    @Inject
+    private GsqlTenants gsqlTenants;
+
     @Inject
     private MBeanManager mbeanManager;
 
     @Inject
     private Metadata metadata;
 
+    @Inject
+    @Named("datasource")
+    private Configuration configuration;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
-        mbeanManager.registerMBean(new GsqlStorageMonitor(metadata, gsqlStorage));
+        mbeanManager.registerMBean(new GsqlStorageMonitor(metadata, gsqlStorage, gsqlBulkheads, gsqlCircuitBreakers));
+        mbeanManager.registerMBean(new GsqlMetricsMonitor(metadata, gsqlMetrics));
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
-        for (String dataSourceName : gsqlFactory.getDatasourceNames()) {
-            Map<String, Object> config = gsqlFactory.getConfigurationFor(dataSourceName);
-            if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                gsqlHandler.withSql(dataSourceName, new GsqlCallback<Void>() {
-                    @Override
-                    public Void handle(@Nonnull String dataSourceName, @Nonnull Sql sql) {
-                        return null;
-                    }
-                });
-            }
+        GsqlStartupInitializer initializer = new GsqlStartupInitializer(gsqlFactory, gsqlHandler);
+        if (configuration.getAsBoolean(KEY_STARTUP_PARALLEL, false)) {
+            initializer.connectInParallel(
+                configuration.getAsInt(KEY_STARTUP_PARALLELISM, Runtime.getRuntime().availableProcessors()),
+                configuration.getAsLong(KEY_STARTUP_TIMEOUT, DEFAULT_STARTUP_TIMEOUT));
+        } else {
+            initializer.connectSequentially();
         }
     }
 
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
-        for (String dataSourceName : gsqlFactory.getDatasourceNames()) {
-            gsqlHandler.closeSql(dataSourceName);
+        gsqlIdleSweeper.shutdown();
+        gsqlReplicas.shutdown();
+        gsqlTenants.shutdown();
+        // tenant datasources are closed under the same deadlines as the configured ones
+        Set<String> dataSourceNames = new LinkedHashSet<>(gsqlTenants.getDatasourceNames());
+        dataSourceNames.addAll(gsqlFactory.getDatasourceNames());
+        if (configuration.getAsBoolean(KEY_SHUTDOWN_PARALLEL, false)) {
+            new GsqlShutdownCoordinator(gsqlHandler, gsqlStorage).closeAll(dataSourceNames,
+                configuration.getAsLong(KEY_SHUTDOWN_DATASOURCE_TIMEOUT, DEFAULT_SHUTDOWN_DATASOURCE_TIMEOUT),
+                configuration.getAsLong(KEY_SHUTDOWN_TIMEOUT, DEFAULT_SHUTDOWN_TIMEOUT));
+        } else {
+            for (String dataSourceName : dataSourceNames) {
+                gsqlHandler.closeSql(dataSourceName);
+            }
         }
+        gsqlExecutors.shutdown();
     }
 }
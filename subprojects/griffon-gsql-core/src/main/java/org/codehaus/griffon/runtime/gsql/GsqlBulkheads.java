@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlFactory;
+import griffon.plugins.gsql.exceptions.GsqlBulkheadFullException;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Limits the number of concurrent calls per datasource. A datasource opts in by setting
+ * {@code maxConcurrentCalls}; callers wait up to {@code acquireTimeout} milliseconds (in arrival order)
+ * for a permit before being rejected with a {@code GsqlBulkheadFullException}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlBulkheads {
+    public static final String KEY_MAX_CONCURRENT_CALLS = "maxConcurrentCalls";
+    public static final String KEY_ACQUIRE_TIMEOUT = "acquireTimeout";
+
+    private static final Bulkhead UNBOUNDED = new Bulkhead("", 0, 0L);
+
+    private final GsqlFactory gsqlFactory;
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Inject
+    public GsqlBulkheads(@Nonnull GsqlFactory gsqlFactory) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+    }
+
+    @Nonnull
+    public Bulkhead bulkheadFor(@Nonnull String datasourceName) {
+        Bulkhead bulkhead = bulkheads.get(datasourceName);
+        if (bulkhead == null) {
+            bulkhead = bulkheads.computeIfAbsent(datasourceName, this::createBulkhead);
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Drops the bulkhead of a datasource that is not expected to be used again.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        bulkheads.remove(datasourceName);
+    }
+
+    /**
+     * @return the number of callers currently waiting for a permit, keyed by datasource name.
+     */
+    @Nonnull
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            if (entry.getValue() != UNBOUNDED) {
+                depths.put(entry.getKey(), entry.getValue().getQueueDepth());
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * @return the number of rejected calls, keyed by datasource name.
+     */
+    @Nonnull
+    public Map<String, Long> getRejections() {
+        Map<String, Long> rejections = new LinkedHashMap<>();
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            if (entry.getValue() != UNBOUNDED) {
+                rejections.put(entry.getKey(), entry.getValue().getRejections());
+            }
+        }
+        return rejections;
+    }
+
+    @Nonnull
+    private Bulkhead createBulkhead(@Nonnull String datasourceName) {
+        Map<String, Object> config = gsqlFactory.getConfigurationFor(datasourceName);
+        int maxConcurrentCalls = getConfigValueAsInt(config, KEY_MAX_CONCURRENT_CALLS, 0);
+        if (maxConcurrentCalls <= 0) {
+            return UNBOUNDED;
+        }
+        return new Bulkhead(datasourceName, maxConcurrentCalls, getConfigValueAsLong(config, KEY_ACQUIRE_TIMEOUT, 0L));
+    }
+
+    public static final class Bulkhead {
+        private final String datasourceName;
+        private final int maxConcurrentCalls;
+        private final long acquireTimeout;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder rejections = new LongAdder();
+
+        private Bulkhead(@Nonnull String datasourceName, int maxConcurrentCalls, long acquireTimeout) {
+            this.datasourceName = datasourceName;
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.acquireTimeout = acquireTimeout;
+            this.permits = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls, true) : null;
+        }
+
+        public void acquire() throws RuntimeGsqlException {
+            // barging is only allowed while nobody is queued, preserving arrival order
+            if (permits == null || (!permits.hasQueuedThreads() && permits.tryAcquire())) {
+                return;
+            }
+
+            waiting.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeGsqlException(datasourceName, e);
+            } finally {
+                waiting.decrementAndGet();
+            }
+
+            if (!acquired) {
+                rejections.increment();
+                throw new GsqlBulkheadFullException(datasourceName, maxConcurrentCalls, acquireTimeout);
+            }
+        }
+
+        public void release() {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+
+        public int getQueueDepth() {
+            return waiting.get();
+        }
+
+        public long getRejections() {
+            return rejections.sum();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.core.GriffonApplication;
+import griffon.core.event.Event;
+import griffon.plugins.gsql.GsqlFactory;
+import griffon.plugins.gsql.events.GsqlCircuitClosedEvent;
+import griffon.plugins.gsql.events.GsqlCircuitHalfOpenEvent;
+import griffon.plugins.gsql.events.GsqlCircuitOpenEvent;
+import griffon.plugins.gsql.exceptions.GsqlBulkheadFullException;
+import griffon.plugins.gsql.exceptions.GsqlCircuitOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+import static org.codehaus.griffon.runtime.gsql.jdbc.SqlFailures.isConnectionFailure;
+
+/**
+ * Fails calls fast while the database behind a datasource is unreachable. A datasource opts in by setting a
+ * failure rate threshold
+ * <pre>
+ * circuitBreaker {
+ *     failureRateThreshold = 50    // percent of the calls in the window
+ *     windowSize           = 20    // most recent calls
+ *     minimumCalls         = 10
+ *     openDuration         = 30000 // ms
+ *     halfOpenCalls        = 1
+ * }
+ * </pre>
+ * Only connection failures count as failed calls; any other outcome shows the database is answering. Once the
+ * failure rate of the window reaches the threshold the breaker opens and calls are rejected with a
+ * {@code GsqlCircuitOpenException} for {@code openDuration} milliseconds. Then up to {@code halfOpenCalls} probe
+ * calls are let through; the breaker closes when all of them succeed and opens again as soon as one fails.
+ * Every transition is published as an application event.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlCircuitBreakers {
+    public static final String KEY_FAILURE_RATE_THRESHOLD = "circuitBreaker.failureRateThreshold";
+    public static final String KEY_WINDOW_SIZE = "circuitBreaker.windowSize";
+    public static final String KEY_MINIMUM_CALLS = "circuitBreaker.minimumCalls";
+    public static final String KEY_OPEN_DURATION = "circuitBreaker.openDuration";
+    public static final String KEY_HALF_OPEN_CALLS = "circuitBreaker.halfOpenCalls";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlCircuitBreakers.class);
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+    private static final long DEFAULT_OPEN_DURATION = 30_000L;
+    private static final int DEFAULT_HALF_OPEN_CALLS = 1;
+    private static final CircuitBreaker DISABLED = new CircuitBreaker("", 0, 1, 1, 0L, 1, event -> { });
+
+    private final GsqlFactory gsqlFactory;
+    private final Consumer<Event> publisher;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public GsqlCircuitBreakers(@Nonnull GsqlFactory gsqlFactory) {
+        this(gsqlFactory, event -> { });
+    }
+
+    @Inject
+    public GsqlCircuitBreakers(@Nonnull GsqlFactory gsqlFactory, @Nonnull GriffonApplication application) {
+        this(gsqlFactory, publisherFor(application));
+    }
+
+    private GsqlCircuitBreakers(@Nonnull GsqlFactory gsqlFactory, @Nonnull Consumer<Event> publisher) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+        this.publisher = publisher;
+    }
+
+    @Nonnull
+    private static Consumer<Event> publisherFor(@Nonnull GriffonApplication application) {
+        requireNonNull(application, "Argument 'application' must not be null");
+        // the event router is looked up on use, it may not be available yet while bindings are being resolved
+        return event -> application.getEventRouter().publishEvent(event);
+    }
+
+    @Nonnull
+    public CircuitBreaker circuitBreakerFor(@Nonnull String datasourceName) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(datasourceName);
+        if (circuitBreaker == null) {
+            circuitBreaker = circuitBreakers.computeIfAbsent(datasourceName, this::createCircuitBreaker);
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Drops the circuit breaker of a datasource that is not expected to be used again.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        circuitBreakers.remove(datasourceName);
+    }
+
+    /**
+     * @return the state of every enabled circuit breaker, keyed by datasource name.
+     */
+    @Nonnull
+    public Map<String, String> getStates() {
+        Map<String, String> states = new LinkedHashMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+            if (entry.getValue() != DISABLED) {
+                states.put(entry.getKey(), entry.getValue().getState().name());
+            }
+        }
+        return states;
+    }
+
+    @Nonnull
+    private CircuitBreaker createCircuitBreaker(@Nonnull String datasourceName) {
+        Map<String, Object> config = gsqlFactory.getConfigurationFor(datasourceName);
+        int failureRateThreshold = getConfigValueAsInt(config, KEY_FAILURE_RATE_THRESHOLD, 0);
+        if (failureRateThreshold <= 0) {
+            return DISABLED;
+        }
+        int windowSize = Math.max(1, getConfigValueAsInt(config, KEY_WINDOW_SIZE, DEFAULT_WINDOW_SIZE));
+        return new CircuitBreaker(datasourceName,
+            Math.min(failureRateThreshold, 100),
+            windowSize,
+            Math.max(1, Math.min(windowSize, getConfigValueAsInt(config, KEY_MINIMUM_CALLS, DEFAULT_MINIMUM_CALLS))),
+            getConfigValueAsLong(config, KEY_OPEN_DURATION, DEFAULT_OPEN_DURATION),
+            Math.max(1, getConfigValueAsInt(config, KEY_HALF_OPEN_CALLS, DEFAULT_HALF_OPEN_CALLS)),
+            publisher);
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static final class CircuitBreaker {
+        private final String datasourceName;
+        private final int failureRateThreshold;
+        private final int minimumCalls;
+        private final long openDuration;
+        private final int halfOpenCalls;
+        private final Consumer<Event> publisher;
+        // outcomes of the most recent calls while closed, true for failures
+        private final boolean[] window;
+        private int next;
+        private int recorded;
+        private int failures;
+        private int probes;
+        private int succeededProbes;
+        private long openUntil;
+        // calls only report outcomes of the state they were admitted in
+        private volatile int generation;
+        private volatile State state = State.CLOSED;
+
+        private CircuitBreaker(@Nonnull String datasourceName, int failureRateThreshold, int windowSize, int minimumCalls,
+                               long openDuration, int halfOpenCalls, @Nonnull Consumer<Event> publisher) {
+            this.datasourceName = datasourceName;
+            this.failureRateThreshold = failureRateThreshold;
+            this.window = new boolean[windowSize];
+            this.minimumCalls = minimumCalls;
+            this.openDuration = openDuration;
+            this.halfOpenCalls = halfOpenCalls;
+            this.publisher = publisher;
+        }
+
+        /**
+         * Admits a call, every admitted call must report its outcome with {@link #release}.
+         *
+         * @return the permit to hand back to {@link #release}.
+         */
+        public int acquire() throws GsqlCircuitOpenException {
+            if (failureRateThreshold == 0 || state == State.CLOSED) {
+                return generation;
+            }
+
+            Event transition = null;
+            long retryAfter = -1L;
+            int permit;
+            synchronized (this) {
+                permit = generation;
+                if (state == State.OPEN) {
+                    long remaining = openUntil - System.nanoTime();
+                    if (remaining > 0) {
+                        retryAfter = TimeUnit.NANOSECONDS.toMillis(remaining) + 1L;
+                    } else {
+                        permit = transitionTo(State.HALF_OPEN);
+                        transition = GsqlCircuitHalfOpenEvent.of(datasourceName);
+                    }
+                }
+                if (retryAfter < 0 && state == State.HALF_OPEN) {
+                    if (probes < halfOpenCalls) {
+                        probes++;
+                    } else {
+                        retryAfter = 0L;
+                    }
+                }
+            }
+            publish(transition);
+            if (retryAfter >= 0) {
+                throw new GsqlCircuitOpenException(datasourceName, retryAfter);
+            }
+            return permit;
+        }
+
+        /**
+         * Records the outcome of an admitted call.
+         *
+         * @param failure the failure of the call or {@code null} if it succeeded.
+         */
+        public void release(int permit, @Nullable Throwable failure) {
+            if (failureRateThreshold == 0) {
+                return;
+            }
+
+            // rejected calls never reached the database, they tell nothing about its health
+            boolean rejected = failure instanceof GsqlBulkheadFullException || failure instanceof GsqlCircuitOpenException;
+            boolean failed = !rejected && isConnectionFailure(failure);
+            Event transition = null;
+            synchronized (this) {
+                if (permit != generation) {
+                    return;
+                }
+                if (state == State.CLOSED && !rejected) {
+                    transition = recordClosed(failed);
+                } else if (state == State.HALF_OPEN) {
+                    if (rejected) {
+                        probes--;
+                    } else if (failed) {
+                        transition = open(100);
+                    } else if (++succeededProbes >= halfOpenCalls) {
+                        transitionTo(State.CLOSED);
+                        transition = GsqlCircuitClosedEvent.of(datasourceName);
+                    }
+                }
+            }
+            publish(transition);
+        }
+
+        @Nonnull
+        public State getState() {
+            return state;
+        }
+
+        @Nullable
+        private Event recordClosed(boolean failed) {
+            if (recorded == window.length) {
+                if (window[next]) {
+                    failures--;
+                }
+            } else {
+                recorded++;
+            }
+            window[next] = failed;
+            if (failed) {
+                failures++;
+            }
+            next = (next + 1) % window.length;
+
+            if (failed && recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+                return open(failures * 100 / recorded);
+            }
+            return null;
+        }
+
+        @Nonnull
+        private Event open(int failureRate) {
+            transitionTo(State.OPEN);
+            openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openDuration);
+            LOG.warn("Circuit breaker of datasource '{}' opened at a failure rate of {}%", datasourceName, failureRate);
+            return GsqlCircuitOpenEvent.of(datasourceName, failureRate, openDuration);
+        }
+
+        private int transitionTo(@Nonnull State target) {
+            LOG.debug("Circuit breaker of datasource '{}' moves from {} to {}", datasourceName, state, target);
+            state = target;
+            next = 0;
+            recorded = 0;
+            failures = 0;
+            probes = 0;
+            succeededProbes = 0;
+            return ++generation;
+        }
+
+        private void publish(@Nullable Event transition) {
+            if (transition != null) {
+                publisher.accept(transition);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one executor per datasource for asynchronous {@code withSql} calls. Each datasource may configure
+ * <pre>
+ * async {
+ *     executor = 'virtual' // or 'fixed'
+ *     poolSize = 8         // used by 'fixed' executors
+ * }
+ * </pre>
+ * Virtual threads are used by default when running on JDK 21+; a fixed pool of daemon threads is used otherwise.
+ * Executors are created on first use and shut down along with the application; none is handed out afterwards.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlExecutors {
+    public static final String KEY_ASYNC_EXECUTOR = "async.executor";
+    public static final String KEY_ASYNC_POOL_SIZE = "async.poolSize";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+    public static final String EXECUTOR_FIXED = "fixed";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlExecutors.class);
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = resolveVirtualThreadFactoryMethod();
+
+    private final GsqlFactory gsqlFactory;
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private volatile boolean shutdown;
+
+    @Inject
+    public GsqlExecutors(@Nonnull GsqlFactory gsqlFactory) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+    }
+
+    @Nonnull
+    public ExecutorService executorFor(@Nonnull String datasourceName) {
+        ExecutorService executor = executors.get(datasourceName);
+        if (executor == null) {
+            requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+            // creation is serialized with shutdown so that no pool is created once the others are gone
+            synchronized (lock) {
+                if (shutdown) {
+                    throw new IllegalStateException("Executors have been shut down, datasource '" + datasourceName + "' cannot run asynchronous calls");
+                }
+                executor = executors.computeIfAbsent(datasourceName, this::createExecutor);
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor of a datasource that is not expected to be used again; calls already submitted
+     * still run.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        ExecutorService executor;
+        synchronized (lock) {
+            executor = executors.remove(datasourceName);
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ExecutorService executor : executors.values()) {
+                executor.shutdown();
+            }
+            executors.clear();
+        }
+    }
+
+    @Nonnull
+    private ExecutorService createExecutor(@Nonnull String datasourceName) {
+        Map<String, Object> config = gsqlFactory.getConfigurationFor(datasourceName);
+        String type = getConfigValueAsString(config, KEY_ASYNC_EXECUTOR, NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null ? EXECUTOR_VIRTUAL : EXECUTOR_FIXED);
+
+        if (EXECUTOR_VIRTUAL.equals(type)) {
+            if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    LOG.warn("Could not create a virtual thread executor for datasource '{}'", datasourceName, e);
+                }
+            } else {
+                LOG.warn("Virtual threads are not available; datasource '{}' falls back to a fixed thread pool", datasourceName);
+            }
+        }
+
+        int poolSize = getConfigValueAsInt(config, KEY_ASYNC_POOL_SIZE, Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(Math.max(1, poolSize), new GsqlThreadFactory("gsql-" + datasourceName));
+    }
+
+    private static Method resolveVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.GsqlFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Closes datasources that have not been used for their {@code idleTimeout} (in milliseconds); the next call
+ * connects them again. Datasources without an {@code idleTimeout} stay connected until they are closed.
+ * <p>
+ * Every use of a datasource holds a {@link Lease}. A datasource is only closed while no lease is held, and
+ * callers asking for a lease while it is being closed wait until it is done.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlIdleSweeper {
+    public static final String KEY_IDLE_TIMEOUT = "idleTimeout";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlIdleSweeper.class);
+    private static final long MIN_CHECK_DELAY = 10L;
+    private static final int EVICTING = -1;
+
+    private final GsqlFactory gsqlFactory;
+    private final Map<String, Long> idleTimeouts = new ConcurrentHashMap<>();
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Object schedulerLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private boolean shutdown;
+
+    @Inject
+    public GsqlIdleSweeper(@Nonnull GsqlFactory gsqlFactory) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+    }
+
+    /**
+     * Marks the start of a use of a datasource.
+     *
+     * @return the lease to hand to {@link #release(Lease)} or {@code null} if the datasource never goes idle.
+     */
+    @Nullable
+    public Lease acquire(@Nonnull String datasourceName) {
+        Lease lease = leaseFor(datasourceName);
+        acquire(lease);
+        return lease;
+    }
+
+    /**
+     * Marks the start of a use of a datasource through a lease obtained earlier with {@link #leaseFor(String)}.
+     */
+    public void acquire(@Nullable Lease lease) {
+        if (lease != null) {
+            lease.acquire();
+        }
+    }
+
+    /**
+     * @return the lease of a datasource, the same for as long as the application runs, or {@code null} if the
+     * datasource never goes idle.
+     */
+    @Nullable
+    public Lease leaseFor(@Nonnull String datasourceName) {
+        long idleTimeout = idleTimeoutFor(datasourceName);
+        if (idleTimeout <= 0) {
+            return null;
+        }
+        Lease lease = leases.get(datasourceName);
+        if (lease == null) {
+            lease = leases.computeIfAbsent(datasourceName, name -> new Lease(idleTimeout));
+        }
+        return lease;
+    }
+
+    public void release(@Nullable Lease lease) {
+        if (lease != null) {
+            lease.release();
+        }
+    }
+
+    /**
+     * Starts watching a datasource that was just connected, closing it with {@code evictor} once it goes idle.
+     */
+    public void watch(@Nonnull String datasourceName, @Nonnull Evictor evictor) {
+        Lease lease = leases.get(datasourceName);
+        if (lease != null && lease.watching.compareAndSet(false, true)) {
+            schedule(datasourceName, lease, evictor, lease.idleTimeout);
+        }
+    }
+
+    /**
+     * Stops watching a datasource that is not expected to be used again and drops its lease.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        idleTimeouts.remove(datasourceName);
+        leases.remove(datasourceName);
+    }
+
+    public void shutdown() {
+        synchronized (schedulerLock) {
+            shutdown = true;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+    }
+
+    private long idleTimeoutFor(@Nonnull String datasourceName) {
+        Long idleTimeout = idleTimeouts.get(datasourceName);
+        if (idleTimeout == null) {
+            idleTimeout = idleTimeouts.computeIfAbsent(datasourceName,
+                name -> getConfigValueAsLong(gsqlFactory.getConfigurationFor(name), KEY_IDLE_TIMEOUT, 0L));
+        }
+        return idleTimeout;
+    }
+
+    private void schedule(@Nonnull String datasourceName, @Nonnull Lease lease, @Nonnull Evictor evictor, long delay) {
+        synchronized (schedulerLock) {
+            if (shutdown) {
+                return;
+            }
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new GsqlThreadFactory("gsql-idle-sweeper"));
+            }
+            try {
+                scheduler.schedule(() -> check(datasourceName, lease, evictor), Math.max(MIN_CHECK_DELAY, delay), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                lease.watching.set(false);
+            }
+        }
+    }
+
+    private void check(@Nonnull String datasourceName, @Nonnull Lease lease, @Nonnull Evictor evictor) {
+        if (leases.get(datasourceName) != lease) {
+            // forgotten, a datasource connected again under the same name is watched through a lease of its own
+            return;
+        }
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lease.lastUsed);
+        if (idle < lease.idleTimeout || !lease.active.compareAndSet(0, EVICTING)) {
+            // in use, or used since the last check
+            schedule(datasourceName, lease, evictor, idle < lease.idleTimeout ? lease.idleTimeout - idle : lease.idleTimeout);
+            return;
+        }
+
+        try {
+            LOG.info("Closing datasource '{}' after {} ms of inactivity", datasourceName, idle);
+            evictor.evict(datasourceName);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close idle datasource '{}'", datasourceName, e);
+        } finally {
+            lease.watching.set(false);
+            lease.reopen();
+        }
+    }
+
+    /**
+     * Closes an idle datasource.
+     */
+    @FunctionalInterface
+    public interface Evictor {
+        void evict(@Nonnull String datasourceName);
+    }
+
+    /**
+     * Tracks the uses of a datasource that may go idle.
+     */
+    public static final class Lease {
+        private final long idleTimeout;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicBoolean watching = new AtomicBoolean();
+        private volatile long lastUsed = System.nanoTime();
+
+        private Lease(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        private void acquire() {
+            while (true) {
+                int current = active.get();
+                if (current == EVICTING) {
+                    awaitReopen();
+                } else if (active.compareAndSet(current, current + 1)) {
+                    lastUsed = System.nanoTime();
+                    return;
+                }
+            }
+        }
+
+        private void release() {
+            lastUsed = System.nanoTime();
+            active.decrementAndGet();
+        }
+
+        private synchronized void awaitReopen() {
+            boolean interrupted = false;
+            while (active.get() == EVICTING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized void reopen() {
+            active.set(0);
+            notifyAll();
+        }
+    }
+}
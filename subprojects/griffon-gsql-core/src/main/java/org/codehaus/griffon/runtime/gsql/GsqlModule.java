@@ -23,11 +23,15 @@ import griffon.core.injection.Module;
 import griffon.plugins.gsql.GsqlFactory;
 import griffon.plugins.gsql.GsqlHandler;
 import griffon.plugins.gsql.GsqlStorage;
+import griffon.plugins.gsql.GsqlTenantResolver;
 import org.codehaus.griffon.runtime.core.injection.AbstractModule;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
 
 import javax.inject.Named;
 
+import static griffon.util.AnnotationUtils.named;
+
 /**
  * @author Andres Almiray
  */
@@ -46,10 +50,49 @@ public class GsqlModule extends AbstractModule {
             .to(DefaultGsqlFactory.class)
             .asSingleton();
 
+        bind(GsqlExecutors.class)
+            .asSingleton();
+
+        bind(GsqlBulkheads.class)
+            .asSingleton();
+
+        bind(GsqlMetrics.class)
+            .asSingleton();
+
+        bind(GsqlReplicas.class)
+            .asSingleton();
+
+        bind(GsqlResultCaches.class)
+            .asSingleton();
+
+        bind(GsqlIdleSweeper.class)
+            .asSingleton();
+
+        bind(GsqlCircuitBreakers.class)
+            .asSingleton();
+
+        bind(GsqlRetries.class)
+            .asSingleton();
+
+        bind(GsqlScopes.class)
+            .asSingleton();
+
         bind(GsqlHandler.class)
             .to(DefaultGsqlHandler.class)
             .asSingleton();
 
+        bind(GsqlTenants.class)
+            .asSingleton();
+
+        bind(GsqlTenantResolver.class)
+            .to(ThreadLocalGsqlTenantResolver.class)
+            .asSingleton();
+
+        bind(GsqlHandler.class)
+            .withClassifier(named("tenant"))
+            .to(TenantGsqlHandler.class)
+            .asSingleton();
+
         bind(GriffonAddon.class)
             .to(GsqlAddon.class)
             .asSingleton();
@@ -0,0 +1,257 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.GsqlFactory;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static java.util.Objects.requireNonNull;
+import static org.codehaus.griffon.runtime.gsql.jdbc.SqlFailures.isConnectionFailure;
+
+/**
+ * Routes read only calls of a datasource to its replicas. A datasource opts in by listing other datasources
+ * as its replicas
+ * <pre>
+ * replicas {
+ *     names               = ['peopleReplica1', 'peopleReplica2']
+ *     strategy            = 'round_robin' // or 'least_in_flight'
+ *     healthCheckInterval = 5000
+ * }
+ * </pre>
+ * Replicas are probed at most once per {@code healthCheckInterval} milliseconds; a replica that fails its
+ * probe, or a call with a connection error, is skipped until the next probe. Calls are routed to the primary
+ * when no replica is healthy. Probes run in the background and calls only read their last outcome, so a replica
+ * is not used until its first probe succeeds and a dead replica never holds up a call.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlReplicas {
+    public static final String KEY_REPLICAS_NAMES = "replicas.names";
+    public static final String KEY_REPLICAS_STRATEGY = "replicas.strategy";
+    public static final String KEY_REPLICAS_HEALTH_CHECK_INTERVAL = "replicas.healthCheckInterval";
+    public static final String STRATEGY_ROUND_ROBIN = "round_robin";
+    public static final String STRATEGY_LEAST_IN_FLIGHT = "least_in_flight";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlReplicas.class);
+    private static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5000L;
+    private static final ReplicaSet NO_REPLICAS = new ReplicaSet(Collections.<Replica>emptyList(), STRATEGY_ROUND_ROBIN, 0L);
+
+    private final GsqlFactory gsqlFactory;
+    private final GsqlMetrics gsqlMetrics;
+    private final Map<String, ReplicaSet> replicaSets = new ConcurrentHashMap<>();
+    // at most one probe per replica runs at a time, a probe waiting on a dead replica holds up no other
+    private final ExecutorService probes = Executors.newCachedThreadPool(new GsqlThreadFactory("gsql-replica-probe"));
+
+    @Inject
+    public GsqlReplicas(@Nonnull GsqlFactory gsqlFactory, @Nonnull GsqlMetrics gsqlMetrics) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+        this.gsqlMetrics = requireNonNull(gsqlMetrics, "Argument 'gsqlMetrics' must not be null");
+    }
+
+    /**
+     * Picks a healthy replica of the given datasource.
+     *
+     * @return the name of the chosen replica or {@code null} if calls should go to the primary.
+     */
+    @Nullable
+    public String select(@Nonnull String datasourceName, @Nonnull HealthCheck healthCheck) {
+        ReplicaSet replicaSet = replicaSetFor(datasourceName);
+        if (replicaSet == NO_REPLICAS) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Replica> candidates = new ArrayList<>(replicaSet.replicas.size());
+        for (Replica replica : replicaSet.replicas) {
+            if (replica.isHealthy(now, replicaSet.healthCheckInterval, healthCheck, probes)) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            LOG.debug("No healthy replica for datasource '{}', using the primary", datasourceName);
+            return null;
+        }
+
+        if (STRATEGY_LEAST_IN_FLIGHT.equals(replicaSet.strategy)) {
+            Replica chosen = candidates.get(0);
+            int inFlight = gsqlMetrics.metricsFor(chosen.name).getInFlight();
+            for (int i = 1; i < candidates.size(); i++) {
+                int candidateInFlight = gsqlMetrics.metricsFor(candidates.get(i).name).getInFlight();
+                if (candidateInFlight < inFlight) {
+                    chosen = candidates.get(i);
+                    inFlight = candidateInFlight;
+                }
+            }
+            return chosen.name;
+        }
+        return candidates.get(Math.floorMod(replicaSet.next.getAndIncrement(), candidates.size())).name;
+    }
+
+    /**
+     * Takes a replica out of rotation until its next health check when the failure is a connection error.
+     *
+     * @return {@code true} if the replica was marked down.
+     */
+    public boolean reportFailure(@Nonnull String datasourceName, @Nonnull String replicaName, @Nonnull Throwable failure) {
+        if (!isConnectionFailure(failure)) {
+            return false;
+        }
+        ReplicaSet replicaSet = replicaSetFor(datasourceName);
+        for (Replica replica : replicaSet.replicas) {
+            if (replica.name.equals(replicaName)) {
+                LOG.warn("Replica '{}' of datasource '{}' is unavailable", replicaName, datasourceName, failure);
+                replica.markDown(System.currentTimeMillis() + replicaSet.healthCheckInterval);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the replicas of a datasource that is not expected to be used again.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        replicaSets.remove(datasourceName);
+    }
+
+    /**
+     * Stops probing replicas.
+     */
+    public void shutdown() {
+        probes.shutdownNow();
+    }
+
+    @Nonnull
+    private ReplicaSet replicaSetFor(@Nonnull String datasourceName) {
+        ReplicaSet replicaSet = replicaSets.get(datasourceName);
+        if (replicaSet == null) {
+            replicaSet = replicaSets.computeIfAbsent(datasourceName, this::createReplicaSet);
+        }
+        return replicaSet;
+    }
+
+    @Nonnull
+    private ReplicaSet createReplicaSet(@Nonnull String datasourceName) {
+        Map<String, Object> config = gsqlFactory.getConfigurationFor(datasourceName);
+        Collection<?> names = getConfigValue(config, KEY_REPLICAS_NAMES, Collections.emptyList());
+        if (names.isEmpty()) {
+            return NO_REPLICAS;
+        }
+
+        List<Replica> replicas = new ArrayList<>(names.size());
+        for (Object name : names) {
+            String replicaName = String.valueOf(name);
+            if (!gsqlFactory.getDatasourceNames().contains(replicaName)) {
+                throw new IllegalArgumentException("Replica '" + replicaName + "' of datasource '" + datasourceName + "' is not a configured datasource");
+            }
+            replicas.add(new Replica(replicaName));
+        }
+        String strategy = getConfigValueAsString(config, KEY_REPLICAS_STRATEGY, STRATEGY_ROUND_ROBIN);
+        if (!STRATEGY_ROUND_ROBIN.equals(strategy) && !STRATEGY_LEAST_IN_FLIGHT.equals(strategy)) {
+            throw new IllegalArgumentException("Unknown replica strategy '" + strategy + "' for datasource '" + datasourceName + "'");
+        }
+        long healthCheckInterval = getConfigValueAsLong(config, KEY_REPLICAS_HEALTH_CHECK_INTERVAL, DEFAULT_HEALTH_CHECK_INTERVAL);
+        return new ReplicaSet(replicas, strategy, healthCheckInterval);
+    }
+
+    /**
+     * Probes a replica datasource.
+     */
+    @FunctionalInterface
+    public interface HealthCheck {
+        boolean isHealthy(@Nonnull String replicaName);
+    }
+
+    private static final class ReplicaSet {
+        private final List<Replica> replicas;
+        private final String strategy;
+        private final long healthCheckInterval;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private ReplicaSet(@Nonnull List<Replica> replicas, @Nonnull String strategy, long healthCheckInterval) {
+            this.replicas = replicas;
+            this.strategy = strategy;
+            this.healthCheckInterval = healthCheckInterval;
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final AtomicLong nextCheckAt = new AtomicLong();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private volatile boolean healthy;
+
+        private Replica(@Nonnull String name) {
+            this.name = name;
+        }
+
+        private boolean isHealthy(long now, long healthCheckInterval, @Nonnull HealthCheck healthCheck, @Nonnull Executor probes) {
+            // the first caller past the deadline schedules a probe, every caller uses the last known state
+            if (now >= nextCheckAt.get() && probing.compareAndSet(false, true)) {
+                try {
+                    probes.execute(() -> probe(healthCheckInterval, healthCheck));
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Could not schedule health check of replica '{}'", name, e);
+                    probing.set(false);
+                }
+            }
+            return healthy;
+        }
+
+        private void probe(long healthCheckInterval, @Nonnull HealthCheck healthCheck) {
+            boolean probed;
+            try {
+                probed = healthCheck.isHealthy(name);
+            } catch (RuntimeException e) {
+                LOG.debug("Health check of replica '{}' failed", name, e);
+                probed = false;
+            }
+            healthy = probed;
+            nextCheckAt.set(System.currentTimeMillis() + healthCheckInterval);
+            probing.set(false);
+        }
+
+        private void markDown(long checkAt) {
+            healthy = false;
+            nextCheckAt.set(checkAt);
+        }
+    }
+}
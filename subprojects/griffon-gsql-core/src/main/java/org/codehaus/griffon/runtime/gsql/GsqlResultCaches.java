@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.gsql.cache.ResultCache;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the query result cache of every datasource that enables one
+ * <pre>
+ * resultCache {
+ *     enabled    = true
+ *     maxEntries = 1000
+ *     maxMemory  = 16777216 // bytes
+ * }
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlResultCaches {
+    public static final String KEY_RESULT_CACHE_ENABLED = "resultCache.enabled";
+    public static final String KEY_RESULT_CACHE_MAX_ENTRIES = "resultCache.maxEntries";
+    public static final String KEY_RESULT_CACHE_MAX_MEMORY = "resultCache.maxMemory";
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_MEMORY = 16L * 1024L * 1024L;
+
+    private final GsqlMetrics gsqlMetrics;
+    private final Map<String, ResultCache> caches = new ConcurrentHashMap<>();
+
+    @Inject
+    public GsqlResultCaches(@Nonnull GsqlMetrics gsqlMetrics) {
+        this.gsqlMetrics = requireNonNull(gsqlMetrics, "Argument 'gsqlMetrics' must not be null");
+    }
+
+    /**
+     * @return the result cache of the datasource or {@code null} if it does not enable one or is not connected.
+     */
+    @Nullable
+    public ResultCache cacheFor(@Nonnull String datasourceName) {
+        return caches.get(datasourceName);
+    }
+
+    /**
+     * Creates the result cache of a datasource being connected, if its configuration enables one.
+     */
+    @Nullable
+    public ResultCache configure(@Nonnull String datasourceName, @Nonnull Map<String, Object> config) {
+        if (!getConfigValueAsBoolean(config, KEY_RESULT_CACHE_ENABLED, false)) {
+            return null;
+        }
+        return caches.computeIfAbsent(datasourceName, name -> new ResultCache(
+            getConfigValueAsInt(config, KEY_RESULT_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES),
+            getConfigValueAsLong(config, KEY_RESULT_CACHE_MAX_MEMORY, DEFAULT_MAX_MEMORY),
+            gsqlMetrics.metricsFor(name)));
+    }
+
+    public void remove(@Nonnull String datasourceName) {
+        ResultCache cache = caches.remove(datasourceName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.GsqlFactory;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsDouble;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+import static org.codehaus.griffon.runtime.gsql.jdbc.SqlFailures.isTransientFailure;
+
+/**
+ * Keeps the retry policy applied to the idempotent calls of every datasource
+ * <pre>
+ * retry {
+ *     maxAttempts  = 3
+ *     initialDelay = 50   // ms
+ *     maxDelay     = 2000 // ms
+ *     multiplier   = 2.0
+ *     jitter       = 0.5  // share of the delay that is randomized
+ *     sqlStates    = ['40', '08']
+ *     vendorCodes  = [60, 1205, 1213, 8177]
+ * }
+ * </pre>
+ * A failure is retried when it is a transaction rollback, a transient connection failure or a recoverable failure,
+ * when its SQLState starts with one of {@code sqlStates} (by default class 40, transaction rollbacks such as deadlocks
+ * and serialization failures, and class 08, connection exceptions), or when its error code is one of
+ * {@code vendorCodes} (by default the deadlock and serialization codes of Oracle, MySQL and SQL Server).
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlRetries {
+    public static final String KEY_RETRY_MAX_ATTEMPTS = "retry.maxAttempts";
+    public static final String KEY_RETRY_INITIAL_DELAY = "retry.initialDelay";
+    public static final String KEY_RETRY_MAX_DELAY = "retry.maxDelay";
+    public static final String KEY_RETRY_MULTIPLIER = "retry.multiplier";
+    public static final String KEY_RETRY_JITTER = "retry.jitter";
+    public static final String KEY_RETRY_SQL_STATES = "retry.sqlStates";
+    public static final String KEY_RETRY_VENDOR_CODES = "retry.vendorCodes";
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_INITIAL_DELAY = 50L;
+    private static final long DEFAULT_MAX_DELAY = 2000L;
+    private static final double DEFAULT_MULTIPLIER = 2d;
+    private static final double DEFAULT_JITTER = 0.5d;
+    private static final List<String> DEFAULT_SQL_STATES = Arrays.asList("40", "08");
+    private static final List<Integer> DEFAULT_VENDOR_CODES = Arrays.asList(60, 1205, 1213, 8177);
+
+    private final GsqlFactory gsqlFactory;
+    private final Map<String, RetryPolicy> policies = new ConcurrentHashMap<>();
+
+    @Inject
+    public GsqlRetries(@Nonnull GsqlFactory gsqlFactory) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+    }
+
+    @Nonnull
+    public RetryPolicy policyFor(@Nonnull String datasourceName) {
+        RetryPolicy policy = policies.get(datasourceName);
+        if (policy == null) {
+            policy = policies.computeIfAbsent(datasourceName, this::createPolicy);
+        }
+        return policy;
+    }
+
+    /**
+     * Drops the retry policy of a datasource that is not expected to be used again.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        policies.remove(datasourceName);
+    }
+
+    @Nonnull
+    private RetryPolicy createPolicy(@Nonnull String datasourceName) {
+        Map<String, Object> config = gsqlFactory.getConfigurationFor(datasourceName);
+        Collection<?> sqlStates = getConfigValue(config, KEY_RETRY_SQL_STATES, DEFAULT_SQL_STATES);
+        Collection<?> vendorCodes = getConfigValue(config, KEY_RETRY_VENDOR_CODES, DEFAULT_VENDOR_CODES);
+        Set<String> states = new LinkedHashSet<>();
+        for (Object state : sqlStates) {
+            states.add(String.valueOf(state));
+        }
+        Set<Integer> codes = new LinkedHashSet<>();
+        for (Object code : vendorCodes) {
+            codes.add(code instanceof Number ? ((Number) code).intValue() : Integer.parseInt(String.valueOf(code)));
+        }
+
+        return new RetryPolicy(
+            Math.max(1, getConfigValueAsInt(config, KEY_RETRY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS)),
+            Math.max(0L, getConfigValueAsLong(config, KEY_RETRY_INITIAL_DELAY, DEFAULT_INITIAL_DELAY)),
+            Math.max(0L, getConfigValueAsLong(config, KEY_RETRY_MAX_DELAY, DEFAULT_MAX_DELAY)),
+            Math.max(1d, getConfigValueAsDouble(config, KEY_RETRY_MULTIPLIER, DEFAULT_MULTIPLIER)),
+            Math.min(1d, Math.max(0d, getConfigValueAsDouble(config, KEY_RETRY_JITTER, DEFAULT_JITTER))),
+            Collections.unmodifiableSet(states),
+            Collections.unmodifiableSet(codes));
+    }
+
+    public static final class RetryPolicy {
+        private final int maxAttempts;
+        private final long initialDelay;
+        private final long maxDelay;
+        private final double multiplier;
+        private final double jitter;
+        private final Set<String> sqlStates;
+        private final Set<Integer> vendorCodes;
+
+        private RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, double multiplier, double jitter,
+                            @Nonnull Set<String> sqlStates, @Nonnull Set<Integer> vendorCodes) {
+            this.maxAttempts = maxAttempts;
+            this.initialDelay = initialDelay;
+            this.maxDelay = maxDelay;
+            this.multiplier = multiplier;
+            this.jitter = jitter;
+            this.sqlStates = sqlStates;
+            this.vendorCodes = vendorCodes;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public boolean isRetryable(@Nullable Throwable failure) {
+            return isTransientFailure(failure, sqlStates, vendorCodes);
+        }
+
+        /**
+         * @param attempt the attempt that just failed, starting at 1.
+         * @return the time to wait before the next attempt, in milliseconds.
+         */
+        public long delayFor(int attempt) {
+            double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+            // callers that failed together, say both sides of a deadlock, should not come back together
+            return (long) (delay * (1d - jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlFactory;
+import groovy.sql.Sql;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides which {@code Sql} instance a call of a datasource receives
+ * <pre>
+ * sqlScope = 'shared' // or 'perThread', 'perCall'
+ * </pre>
+ * {@code shared} hands the stored instance to every caller. {@code perThread} gives every thread an instance of its
+ * own and {@code perCall} a fresh one for each call; both are backed by the pooled {@code DataSource} of the stored
+ * instance, so that statement caching, {@code withBatch} and {@code cacheConnection} are safe to use concurrently.
+ * <p>
+ * An instance handed to a thread that keeps a connection, by turning on {@code cacheStatements} or
+ * {@code cacheConnection} outside of their closure forms, pins a pooled connection until the instance is closed.
+ * {@code perThread} closes the instance of a thread once it is replaced, the instances of threads that have ended
+ * whenever another thread receives a new one, and every instance when the datasource is closed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlScopes {
+    public static final String KEY_SQL_SCOPE = "sqlScope";
+    public static final String SCOPE_SHARED = "shared";
+    public static final String SCOPE_PER_THREAD = "perThread";
+    public static final String SCOPE_PER_CALL = "perCall";
+
+    private static final SqlScope SHARED = new SharedScope();
+    private static final SqlScope PER_CALL = new PerCallScope();
+
+    private final GsqlFactory gsqlFactory;
+    private final Map<String, SqlScope> scopes = new ConcurrentHashMap<>();
+
+    @Inject
+    public GsqlScopes(@Nonnull GsqlFactory gsqlFactory) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+    }
+
+    @Nonnull
+    public SqlScope scopeFor(@Nonnull String datasourceName) {
+        SqlScope scope = scopes.get(datasourceName);
+        if (scope == null) {
+            scope = scopes.computeIfAbsent(datasourceName, this::createScope);
+        }
+        return scope;
+    }
+
+    /**
+     * Closes the instances handed out for a datasource that is about to be closed.
+     */
+    public void close(@Nonnull String datasourceName) {
+        SqlScope scope = scopes.get(datasourceName);
+        if (scope != null) {
+            scope.close();
+        }
+    }
+
+    /**
+     * Closes the instances handed out for a datasource that is not expected to be used again and drops its scope.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        SqlScope scope = scopes.remove(datasourceName);
+        if (scope != null) {
+            scope.close();
+        }
+    }
+
+    @Nonnull
+    private SqlScope createScope(@Nonnull String datasourceName) {
+        String scope = getConfigValueAsString(gsqlFactory.getConfigurationFor(datasourceName), KEY_SQL_SCOPE, SCOPE_SHARED);
+        switch (scope) {
+            case SCOPE_SHARED:
+                return SHARED;
+            case SCOPE_PER_THREAD:
+                return new PerThreadScope();
+            case SCOPE_PER_CALL:
+                return PER_CALL;
+            default:
+                throw new IllegalArgumentException("Unknown sql scope '" + scope + "' for datasource '" + datasourceName + "'");
+        }
+    }
+
+    @Nonnull
+    private static DataSource dataSourceOf(@Nonnull Sql shared) {
+        DataSource dataSource = shared.getDataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("Sql " + shared + " is not backed by a DataSource");
+        }
+        return dataSource;
+    }
+
+    public interface SqlScope {
+        /**
+         * @param shared the stored instance of the datasource.
+         * @return the instance to hand to the callback, to be given back with {@link #release(Sql)}.
+         */
+        @Nonnull
+        Sql acquire(@Nonnull Sql shared);
+
+        void release(@Nonnull Sql sql);
+
+        void close();
+    }
+
+    private static final class SharedScope implements SqlScope {
+        @Nonnull
+        @Override
+        public Sql acquire(@Nonnull Sql shared) {
+            return shared;
+        }
+
+        @Override
+        public void release(@Nonnull Sql sql) {
+            // the stored instance is closed with its datasource
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    private static final class PerCallScope implements SqlScope {
+        @Nonnull
+        @Override
+        public Sql acquire(@Nonnull Sql shared) {
+            return new Sql(dataSourceOf(shared));
+        }
+
+        @Override
+        public void release(@Nonnull Sql sql) {
+            // gives back a connection kept by cacheStatements or cacheConnection
+            sql.close();
+        }
+
+        @Override
+        public void close() {
+            // every instance is closed when its call ends
+        }
+    }
+
+    private static final class PerThreadScope implements SqlScope {
+        private final ThreadLocal<Sql> current = new ThreadLocal<>();
+        // instances by the thread they were handed to, guarded by itself
+        private final Map<Thread, Sql> instances = new HashMap<>();
+
+        @Nonnull
+        @Override
+        public Sql acquire(@Nonnull Sql shared) {
+            DataSource dataSource = dataSourceOf(shared);
+            Sql sql = current.get();
+            // the datasource may have been closed and connected again since this thread last used it
+            if (sql == null || sql.getDataSource() != dataSource) {
+                sql = replace(dataSource);
+            }
+            return sql;
+        }
+
+        @Nonnull
+        private Sql replace(@Nonnull DataSource dataSource) {
+            Sql sql = new Sql(dataSource);
+            List<Sql> stale = new ArrayList<>();
+            synchronized (instances) {
+                Sql previous = instances.put(Thread.currentThread(), sql);
+                if (previous != null) {
+                    stale.add(previous);
+                }
+                // a thread that ended cannot give back a connection its instance may still hold
+                for (Iterator<Map.Entry<Thread, Sql>> it = instances.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Thread, Sql> entry = it.next();
+                    if (!entry.getKey().isAlive()) {
+                        stale.add(entry.getValue());
+                        it.remove();
+                    }
+                }
+            }
+            current.set(sql);
+            for (Sql instance : stale) {
+                instance.close();
+            }
+            return sql;
+        }
+
+        @Override
+        public void release(@Nonnull Sql sql) {
+            // kept for the next call of the same thread
+        }
+
+        @Override
+        public void close() {
+            List<Sql> closing;
+            synchronized (instances) {
+                closing = new ArrayList<>(instances.values());
+                instances.clear();
+            }
+            for (Sql sql : closing) {
+                sql.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlHandler;
+import griffon.plugins.gsql.GsqlStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Closes all open datasources concurrently. Each datasource gets its own deadline, bounded by a global one;
+ * datasources that fail to close in time are abandoned so that a hung database cannot block application shutdown.
+ * An abandoned datasource keeps closing on its daemon thread, on a best effort basis, and leaves storage once its
+ * pool has been closed; if it never closes the pool is leaked until the JVM exits.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class GsqlShutdownCoordinator {
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlShutdownCoordinator.class);
+
+    private final GsqlHandler gsqlHandler;
+    private final GsqlStorage gsqlStorage;
+
+    GsqlShutdownCoordinator(@Nonnull GsqlHandler gsqlHandler, @Nonnull GsqlStorage gsqlStorage) {
+        this.gsqlHandler = requireNonNull(gsqlHandler, "Argument 'gsqlHandler' must not be null");
+        this.gsqlStorage = requireNonNull(gsqlStorage, "Argument 'gsqlStorage' must not be null");
+    }
+
+    /**
+     * @param dataSourceNames the datasources to close, configured and tenant ones alike; those not open are skipped.
+     */
+    void closeAll(@Nonnull Collection<String> dataSourceNames, long datasourceTimeout, long globalTimeout) {
+        List<String> open = new ArrayList<>();
+        for (String dataSourceName : dataSourceNames) {
+            if (gsqlStorage.get(dataSourceName) != null) {
+                open.add(dataSourceName);
+            }
+        }
+        if (open.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long globalDeadline = start + TimeUnit.MILLISECONDS.toNanos(globalTimeout);
+        long datasourceDeadline = start + TimeUnit.MILLISECONDS.toNanos(datasourceTimeout);
+
+        // one thread per datasource so that every deadline starts counting at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(open.size(), new GsqlThreadFactory("gsql-shutdown"));
+        Map<String, Future<Long>> futures = new LinkedHashMap<>();
+        for (final String dataSourceName : open) {
+            futures.put(dataSourceName, executor.submit(() -> {
+                long s = System.nanoTime();
+                gsqlHandler.closeSql(dataSourceName);
+                return System.nanoTime() - s;
+            }));
+        }
+        executor.shutdown();
+
+        for (Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+            String dataSourceName = entry.getKey();
+            Future<Long> future = entry.getValue();
+            long remaining = Math.min(datasourceDeadline, globalDeadline) - System.nanoTime();
+            try {
+                long elapsed = future.get(Math.max(0L, remaining), TimeUnit.NANOSECONDS);
+                LOG.info("Closed datasource '{}' in {} ms", dataSourceName, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            } catch (TimeoutException e) {
+                abandon(dataSourceName, start);
+            } catch (ExecutionException e) {
+                LOG.error("Could not close datasource '{}'", dataSourceName, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(dataSourceName, start);
+            }
+        }
+    }
+
+    private void abandon(@Nonnull String dataSourceName, long start) {
+        // interrupting the closing thread could leave the pool half closed, it is left to finish in the background
+        LOG.warn("Abandoned datasource '{}' after {} ms; it did not close in time and keeps closing in the background",
+            dataSourceName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
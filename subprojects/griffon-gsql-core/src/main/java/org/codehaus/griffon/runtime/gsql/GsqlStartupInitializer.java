@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.gsql.GsqlCallback;
+import griffon.plugins.gsql.GsqlFactory;
+import griffon.plugins.gsql.GsqlHandler;
+import griffon.plugins.gsql.exceptions.GsqlInitializationException;
+import groovy.sql.Sql;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connects every datasource flagged with {@code connect_on_startup}, honoring the {@code depends_on}
+ * ordering between datasources. Datasources may be connected one after another or concurrently on a
+ * bounded executor, in which case all failures are collected into a single {@code GsqlInitializationException}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class GsqlStartupInitializer {
+    static final String KEY_CONNECT_ON_STARTUP = "connect_on_startup";
+    static final String KEY_DEPENDS_ON = "depends_on";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlStartupInitializer.class);
+
+    private final GsqlFactory gsqlFactory;
+    private final GsqlHandler gsqlHandler;
+
+    GsqlStartupInitializer(@Nonnull GsqlFactory gsqlFactory, @Nonnull GsqlHandler gsqlHandler) {
+        this.gsqlFactory = requireNonNull(gsqlFactory, "Argument 'gsqlFactory' must not be null");
+        this.gsqlHandler = requireNonNull(gsqlHandler, "Argument 'gsqlHandler' must not be null");
+    }
+
+    void connectSequentially() {
+        for (String dataSourceName : resolveStartupOrder()) {
+            connect(dataSourceName);
+        }
+    }
+
+    void connectInParallel(int parallelism, long timeout) {
+        List<String> order = resolveStartupOrder();
+        if (order.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, order.size())), new GsqlThreadFactory("gsql-startup"));
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        try {
+            // dependencies always precede their dependents in the resolved order
+            for (final String dataSourceName : order) {
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (String dependency : dependenciesOf(dataSourceName)) {
+                    dependencies.add(futures.get(dependency));
+                }
+                futures.put(dataSourceName, CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                    .handle((ignored, failure) -> {
+                        if (failure != null) {
+                            throw new CompletionException(new IllegalStateException("Datasource '" + dataSourceName + "' was not connected because a dependency failed", failure));
+                        }
+                        return ignored;
+                    })
+                    .thenRunAsync(() -> connect(dataSourceName), executor));
+            }
+
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // failures are reported per datasource below
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            CompletableFuture<Void> future = entry.getValue();
+            if (!future.isDone()) {
+                future.cancel(true);
+                failures.put(entry.getKey(), new TimeoutException("Datasource '" + entry.getKey() + "' did not connect within " + timeout + " ms"));
+            } else if (future.isCompletedExceptionally()) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    failures.put(entry.getKey(), e.getCause() != null ? e.getCause() : e);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new GsqlInitializationException(failures);
+        }
+    }
+
+    private void connect(@Nonnull String dataSourceName) {
+        long start = System.nanoTime();
+        gsqlHandler.withSql(dataSourceName, new GsqlCallback<Void>() {
+            @Override
+            public Void handle(@Nonnull String dataSourceName, @Nonnull Sql sql) {
+                return null;
+            }
+        });
+        LOG.debug("Connected datasource '{}' in {} ms", dataSourceName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Returns the datasources to be connected at startup, dependencies first. A datasource referenced
+     * through {@code depends_on} is connected even if it does not set {@code connect_on_startup} itself.
+     */
+    @Nonnull
+    private List<String> resolveStartupOrder() {
+        Set<String> ordered = new LinkedHashSet<>();
+        Set<String> visiting = new LinkedHashSet<>();
+        for (String dataSourceName : gsqlFactory.getDatasourceNames()) {
+            Map<String, Object> config = gsqlFactory.getConfigurationFor(dataSourceName);
+            if (getConfigValueAsBoolean(config, KEY_CONNECT_ON_STARTUP, false)) {
+                visit(dataSourceName, visiting, ordered);
+            }
+        }
+        return new ArrayList<>(ordered);
+    }
+
+    private void visit(@Nonnull String dataSourceName, @Nonnull Set<String> visiting, @Nonnull Set<String> ordered) {
+        if (ordered.contains(dataSourceName)) {
+            return;
+        }
+        if (!visiting.add(dataSourceName)) {
+            throw new IllegalStateException("Cyclic '" + KEY_DEPENDS_ON + "' between gsql datasources " + visiting + " -> " + dataSourceName);
+        }
+        for (String dependency : dependenciesOf(dataSourceName)) {
+            if (!gsqlFactory.getDatasourceNames().contains(dependency)) {
+                throw new IllegalArgumentException("Datasource '" + dataSourceName + "' depends on unknown datasource '" + dependency + "'");
+            }
+            visit(dependency, visiting, ordered);
+        }
+        visiting.remove(dataSourceName);
+        ordered.add(dataSourceName);
+    }
+
+    @Nonnull
+    private Collection<String> dependenciesOf(@Nonnull String dataSourceName) {
+        Object value = getConfigValue(gsqlFactory.getConfigurationFor(dataSourceName), KEY_DEPENDS_ON, null);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> dependencies = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                dependencies.add(String.valueOf(o));
+            }
+        } else {
+            for (String s : String.valueOf(value).split(",")) {
+                if (!s.trim().isEmpty()) {
+                    dependencies.add(s.trim());
+                }
+            }
+        }
+        return dependencies;
+    }
+}
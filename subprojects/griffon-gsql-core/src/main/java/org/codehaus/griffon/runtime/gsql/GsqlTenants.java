@@ -0,0 +1,331 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.core.Configuration;
+import griffon.plugins.datasource.DataSourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Derives per tenant datasources from a template datasource
+ * <pre>
+ * gsql {
+ *     tenants {
+ *         template   = 'tenant'
+ *         maxTenants = 100
+ *     }
+ * }
+ *
+ * dataSources {
+ *     tenant {
+ *         url = 'jdbc:postgresql://db/tenant_${tenant}'
+ *     }
+ * }
+ * </pre>
+ * The datasource of tenant {@code acme} is named {@code tenant:acme}; its configuration is that of the template
+ * with every {@code ${tenant}} replaced by the tenant key. Tenant datasources get a pool of their own; every pool
+ * is tracked from the moment it is created, however the datasource was reached, until it is closed.
+ * <p>
+ * Creating a pool beyond {@code maxTenants} evicts the least recently used tenants. Recency is approximated with
+ * a second chance: a tenant that served calls since it was last looked at moves to the back of the queue, thus
+ * calls never record anything here. Evictions run on a background thread and are skipped when the tenant is used
+ * again after being picked; busy tenants are never evicted, so the limit may be exceeded for a while.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlTenants {
+    public static final String KEY_TENANTS_TEMPLATE = "gsql.tenants.template";
+    public static final String KEY_TENANTS_MAX_TENANTS = "gsql.tenants.maxTenants";
+    public static final String TENANT_SEPARATOR = ":";
+    public static final String TENANT_PLACEHOLDER = "${tenant}";
+
+    private static final int DEFAULT_MAX_TENANTS = 100;
+    private static final Pattern TENANT_KEY = Pattern.compile("[A-Za-z0-9_\\-]+");
+    private static final String KEY_POOL = "pool";
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlTenants.class);
+
+    private final Configuration configuration;
+    private final DataSourceFactory dataSourceFactory;
+    private final Map<String, DataSource> dataSources = new ConcurrentHashMap<>();
+    // tenants with an open pool, least recently admitted or given a second chance first; guarded by itself
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>();
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(new GsqlThreadFactory("gsql-tenant-closer"));
+    private volatile Evictor evictor;
+
+    @Inject
+    public GsqlTenants(@Nonnull @Named("datasource") Configuration configuration, @Nonnull DataSourceFactory dataSourceFactory) {
+        this.configuration = requireNonNull(configuration, "Argument 'configuration' must not be null");
+        this.dataSourceFactory = requireNonNull(dataSourceFactory, "Argument 'dataSourceFactory' must not be null");
+    }
+
+    /**
+     * @return the name of the template datasource or {@code null} if tenants are not configured.
+     */
+    @Nullable
+    public String getTemplate() {
+        return configuration.getAsString(KEY_TENANTS_TEMPLATE, null);
+    }
+
+    public boolean isTenantDatasource(@Nonnull String datasourceName) {
+        String template = getTemplate();
+        return template != null && datasourceName.startsWith(template + TENANT_SEPARATOR);
+    }
+
+    /**
+     * @return the name of the datasource of a tenant.
+     */
+    @Nonnull
+    public String datasourceNameFor(@Nonnull String tenant) {
+        String template = getTemplate();
+        if (template == null) {
+            throw new IllegalStateException("No tenant template datasource has been configured with '" + KEY_TENANTS_TEMPLATE + "'");
+        }
+        if (!TENANT_KEY.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Invalid tenant key '" + tenant + "'");
+        }
+        return template + TENANT_SEPARATOR + tenant;
+    }
+
+    /**
+     * Sets what tells how much a tenant datasource is used and closes the evicted ones. No tenant is evicted until
+     * one is set.
+     */
+    public void setEvictor(@Nullable Evictor evictor) {
+        this.evictor = evictor;
+    }
+
+    /**
+     * @return the tenant datasources currently tracked.
+     */
+    @Nonnull
+    public List<String> getDatasourceNames() {
+        synchronized (tenants) {
+            return new ArrayList<>(tenants.keySet());
+        }
+    }
+
+    @Nonnull
+    public Map<String, Object> getConfigurationFor(@Nonnull String datasourceName) {
+        String tenant = datasourceName.substring(datasourceName.indexOf(TENANT_SEPARATOR) + 1);
+        return resolve(dataSourceFactory.getConfigurationFor(requireNonNull(getTemplate())), tenant);
+    }
+
+    @Nonnull
+    public DataSource getDataSource(@Nonnull String datasourceName) {
+        DataSource dataSource = dataSources.get(datasourceName);
+        if (dataSource == null) {
+            dataSource = dataSources.computeIfAbsent(datasourceName, name -> {
+                DataSource created = createDataSource(name, getConfigurationFor(name));
+                admit(name);
+                return created;
+            });
+        }
+        return dataSource;
+    }
+
+    public void closeDataSource(@Nonnull String datasourceName) {
+        DataSource dataSource = dataSources.remove(datasourceName);
+        synchronized (tenants) {
+            tenants.remove(datasourceName);
+        }
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not close datasource '" + datasourceName + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Drops the evictions that have not started yet; the pools they would have closed stay tracked.
+     */
+    public void shutdown() {
+        closer.shutdownNow();
+    }
+
+    private void admit(@Nonnull String datasourceName) {
+        Evictor e = evictor;
+        List<String> picked = new ArrayList<>();
+        synchronized (tenants) {
+            tenants.put(datasourceName, new Tenant(e != null ? e.useCount(datasourceName) : 0L));
+            if (e != null) {
+                pick(e, datasourceName, picked);
+            }
+        }
+        for (String name : picked) {
+            try {
+                closer.execute(() -> evict(e, name));
+            } catch (RejectedExecutionException x) {
+                // shutting down, the pool is closed along with the others
+                return;
+            }
+        }
+    }
+
+    // guarded by tenants
+    private void pick(@Nonnull Evictor e, @Nonnull String admitted, @Nonnull List<String> picked) {
+        int excess = tenants.size() - configuration.getAsInt(KEY_TENANTS_MAX_TENANTS, DEFAULT_MAX_TENANTS);
+        for (Tenant tenant : tenants.values()) {
+            if (tenant.evicting) {
+                excess--;
+            }
+        }
+        for (String name : new ArrayList<>(tenants.keySet())) {
+            if (excess <= 0) {
+                return;
+            }
+            Tenant tenant = tenants.get(name);
+            if (name.equals(admitted) || tenant.evicting) {
+                continue;
+            }
+            long uses = e.useCount(name);
+            if (uses != tenant.uses || e.isBusy(name)) {
+                // used since it was last looked at, give it a second chance
+                tenant.uses = uses;
+                tenants.remove(name);
+                tenants.put(name, tenant);
+                continue;
+            }
+            tenant.evicting = true;
+            picked.add(name);
+            excess--;
+        }
+    }
+
+    private void evict(@Nonnull Evictor e, @Nonnull String datasourceName) {
+        synchronized (tenants) {
+            Tenant tenant = tenants.get(datasourceName);
+            if (tenant == null || !tenant.evicting) {
+                // closed meanwhile
+                return;
+            }
+            long uses = e.useCount(datasourceName);
+            if (uses != tenant.uses || e.isBusy(datasourceName)) {
+                // used again after it was picked
+                tenant.uses = uses;
+                tenant.evicting = false;
+                tenants.remove(datasourceName);
+                tenants.put(datasourceName, tenant);
+                return;
+            }
+        }
+        LOG.debug("Closing datasource '{}' of least recently used tenant", datasourceName);
+        try {
+            e.evict(datasourceName);
+        } catch (RuntimeException x) {
+            LOG.warn("Could not close datasource '{}' of evicted tenant", datasourceName, x);
+            synchronized (tenants) {
+                Tenant tenant = tenants.get(datasourceName);
+                if (tenant != null) {
+                    // still open, may be picked again
+                    tenant.evicting = false;
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private static DataSource createDataSource(@Nonnull String datasourceName, @Nonnull Map<String, Object> config) {
+        // pools are configured the same way the datasource plugin configures its own
+        Properties properties = new Properties();
+        Object pool = config.get(KEY_POOL);
+        if (pool instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) pool).entrySet()) {
+                properties.setProperty(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+        HikariConfig hikariConfig = new HikariConfig(properties);
+        hikariConfig.setPoolName("gsql-" + datasourceName);
+        hikariConfig.setJdbcUrl(getConfigValueAsString(config, "url", null));
+        hikariConfig.setUsername(getConfigValueAsString(config, "username", null));
+        hikariConfig.setPassword(getConfigValueAsString(config, "password", null));
+        String driverClassName = getConfigValueAsString(config, "driverClassName", null);
+        if (driverClassName != null) {
+            hikariConfig.setDriverClassName(driverClassName);
+        }
+        return new HikariDataSource(hikariConfig);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> resolve(@Nonnull Map<String, Object> template, @Nonnull String tenant) {
+        Map<String, Object> resolved = new LinkedHashMap<>(template.size());
+        for (Map.Entry<String, Object> entry : template.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof CharSequence) {
+                value = value.toString().replace(TENANT_PLACEHOLDER, tenant);
+            } else if (value instanceof Map) {
+                value = resolve((Map<String, Object>) value, tenant);
+            }
+            resolved.put(entry.getKey(), value);
+        }
+        return resolved;
+    }
+
+    /**
+     * Closes evicted tenant datasources and drops the state kept for them.
+     */
+    public interface Evictor {
+        /**
+         * @return a count that changes whenever the datasource serves a call.
+         */
+        long useCount(@Nonnull String datasourceName);
+
+        /**
+         * @return whether the datasource has calls in flight; those are never evicted.
+         */
+        boolean isBusy(@Nonnull String datasourceName);
+
+        void evict(@Nonnull String datasourceName);
+    }
+
+    private static final class Tenant {
+        private long uses;
+        private boolean evicting;
+
+        private Tenant(long uses) {
+            this.uses = uses;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+
+/**
+ * Fills the pool of a datasource before it is handed out
+ * <pre>
+ * warmup {
+ *     connections     = 10
+ *     validationQuery = 'SELECT 1' // Connection.isValid() when omitted
+ *     parallelism     = 4
+ * }
+ * </pre>
+ * All connections are held open until every one of them has been validated, forcing the pool to create
+ * {@code connections} distinct physical connections. Asking for more connections than the pool may hold,
+ * {@code pool.maximumPoolSize}, would wait out the connection timeout; the pool is filled to its maximum instead.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class PoolWarmer {
+    static final String KEY_WARMUP_CONNECTIONS = "warmup.connections";
+    static final String KEY_WARMUP_VALIDATION_QUERY = "warmup.validationQuery";
+    static final String KEY_WARMUP_PARALLELISM = "warmup.parallelism";
+    static final String KEY_POOL_MAXIMUM_SIZE = "pool.maximumPoolSize";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PoolWarmer.class);
+    private static final int VALIDATION_TIMEOUT = 5;
+    // default of the HikariCP pools created by the datasource plugin
+    private static final int DEFAULT_POOL_MAXIMUM_SIZE = 10;
+
+    private PoolWarmer() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the time spent warming up the pool in milliseconds, {@code 0} if warm-up is not configured.
+     */
+    static long warmup(@Nonnull String datasourceName, @Nonnull DataSource dataSource, @Nonnull Map<String, Object> config) {
+        int connections = getConfigValueAsInt(config, KEY_WARMUP_CONNECTIONS, 0);
+        if (connections <= 0) {
+            return 0L;
+        }
+        int maximumPoolSize = getConfigValueAsInt(config, KEY_POOL_MAXIMUM_SIZE, DEFAULT_POOL_MAXIMUM_SIZE);
+        if (connections > maximumPoolSize) {
+            LOG.warn("Datasource '{}' asks for {} warm-up connections but its pool holds at most {}; warming up {} connections",
+                datasourceName, connections, maximumPoolSize, maximumPoolSize);
+            connections = maximumPoolSize;
+        }
+        String validationQuery = getConfigValueAsString(config, KEY_WARMUP_VALIDATION_QUERY, null);
+        int parallelism = Math.max(1, Math.min(connections,
+            getConfigValueAsInt(config, KEY_WARMUP_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+
+        LOG.debug("Warming up {} connections of datasource '{}' with parallelism {}", connections, datasourceName, parallelism);
+        long startedAt = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new GsqlThreadFactory("gsql-warmup-" + datasourceName));
+        List<Future<Connection>> futures = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                futures.add(executor.submit(() -> open(dataSource, validationQuery)));
+            }
+            for (Future<Connection> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new RuntimeGsqlException(datasourceName, cause instanceof Exception ? (Exception) cause : e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeGsqlException(datasourceName, e);
+        } finally {
+            executor.shutdown();
+            release(datasourceName, futures);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        LOG.info("Warmed up {} connections of datasource '{}' in {} ms", connections, datasourceName, elapsed);
+        return elapsed;
+    }
+
+    @Nonnull
+    private static Connection open(@Nonnull DataSource dataSource, @Nullable String validationQuery) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            if (validationQuery != null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(validationQuery);
+                }
+            } else if (!connection.isValid(VALIDATION_TIMEOUT)) {
+                throw new SQLException("Connection is not valid");
+            }
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    private static void release(@Nonnull String datasourceName, @Nonnull List<Future<Connection>> futures) {
+        for (Future<Connection> future : futures) {
+            Connection connection;
+            try {
+                // tasks still running after a failure are waited for so that their connections are not leaked
+                connection = future.get();
+            } catch (ExecutionException | RuntimeException e) {
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while releasing warm-up connections of datasource '{}'", datasourceName);
+                return;
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(@Nonnull Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.debug("Could not close warm-up connection", e);
+        }
+    }
+}
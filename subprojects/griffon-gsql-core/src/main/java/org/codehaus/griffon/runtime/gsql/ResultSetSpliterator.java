@@ -0,0 +1,189 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+import groovy.sql.GroovyRowResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Walks a forward only, read only {@code ResultSet} one row at a time. Owns the statement and result set it reads
+ * from, and the connection unless it reads on the connection of a transaction; all of them are released by
+ * {@link #close()}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ResultSetSpliterator extends Spliterators.AbstractSpliterator<GroovyRowResult> implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultSetSpliterator.class);
+
+    private final String datasourceName;
+    private final Connection connection;
+    private final boolean ownsConnection;
+    private final boolean autoCommit;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private String[] columns;
+    private Exception failure;
+    private boolean closed;
+
+    private ResultSetSpliterator(@Nonnull String datasourceName, @Nonnull Connection connection, boolean ownsConnection) throws SQLException {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.datasourceName = datasourceName;
+        this.connection = connection;
+        this.ownsConnection = ownsConnection;
+        this.autoCommit = connection.getAutoCommit();
+    }
+
+    @Nonnull
+    static ResultSetSpliterator open(@Nonnull String datasourceName, @Nonnull DataSource dataSource, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        ResultSetSpliterator spliterator;
+        try {
+            spliterator = new ResultSetSpliterator(datasourceName, connection, true);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return start(spliterator, sql, params, fetchSize);
+    }
+
+    /**
+     * Reads on the connection of an ongoing transaction, which stays open once the rows have been read.
+     */
+    @Nonnull
+    static ResultSetSpliterator openInTransaction(@Nonnull String datasourceName, @Nonnull Connection connection, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws SQLException {
+        return start(new ResultSetSpliterator(datasourceName, connection, false), sql, params, fetchSize);
+    }
+
+    @Nonnull
+    private static ResultSetSpliterator start(@Nonnull ResultSetSpliterator spliterator, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws SQLException {
+        try {
+            spliterator.execute(sql, params, fetchSize);
+            return spliterator;
+        } catch (SQLException | RuntimeException e) {
+            spliterator.failure = e;
+            spliterator.close();
+            throw e;
+        }
+    }
+
+    private void execute(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws SQLException {
+        // most drivers only honour the fetch size outside of auto-commit mode
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        for (int i = 0; i < params.size(); i++) {
+            statement.setObject(i + 1, params.get(i));
+        }
+        resultSet = statement.executeQuery();
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        columns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = metaData.getColumnLabel(i + 1);
+        }
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    @Nullable
+    Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super GroovyRowResult> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                return false;
+            }
+            Map<String, Object> row = new LinkedHashMap<>(columns.length * 2);
+            for (int i = 0; i < columns.length; i++) {
+                row.put(columns[i], resultSet.getObject(i + 1));
+            }
+            action.accept(new GroovyRowResult(row));
+            return true;
+        } catch (SQLException e) {
+            failure = e;
+            throw new RuntimeGsqlException(datasourceName, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            LOG.trace("Error closing result set of datasource '{}'", datasourceName, e);
+        }
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            LOG.trace("Error closing statement of datasource '{}'", datasourceName, e);
+        }
+        if (!ownsConnection) {
+            return;
+        }
+        try {
+            if (autoCommit) {
+                // nothing was written, ending the transaction is only needed to release the cursor
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOG.trace("Error restoring auto-commit of datasource '{}'", datasourceName, e);
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.warn("Error closing connection of datasource '{}'", datasourceName, e);
+        }
+    }
+}
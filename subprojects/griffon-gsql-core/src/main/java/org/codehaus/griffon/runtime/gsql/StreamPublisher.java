@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes the elements of a lazily opened {@code Stream}, pulling them only as subscribers request them.
+ * Every subscriber gets a stream of its own, opened on its first request and closed once it completes, fails or is
+ * cancelled. Signals are delivered on {@code executor} and a subscription is never drained by two threads at once.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StreamPublisher<T> implements Publisher<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamPublisher.class);
+
+    private final Supplier<Stream<T>> opener;
+    private final Executor executor;
+
+    StreamPublisher(@Nonnull Supplier<Stream<T>> opener, @Nonnull Executor executor) {
+        this.opener = requireNonNull(opener, "Argument 'opener' must not be null");
+        this.executor = requireNonNull(executor, "Argument 'executor' must not be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        requireNonNull(subscriber, "Argument 'subscriber' must not be null");
+        StreamSubscription subscription = new StreamSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class StreamSubscription implements Subscription, Runnable {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        // counts the signals that arrived while draining, whoever takes it from 0 drains
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+        // only touched while draining
+        private Stream<T> stream;
+        private Iterator<T> elements;
+        private boolean done;
+
+        private StreamSubscription(@Nonnull Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Subscriber " + subscriber + " requested " + n + " elements, requests must be positive (rule 3.9)");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // nothing else will drain, the failure is reported from here
+                    failure = e;
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (failure != null) {
+                finish();
+                subscriber.onError(failure);
+                return;
+            }
+
+            try {
+                if (elements == null) {
+                    stream = opener.get();
+                    elements = stream.iterator();
+                }
+                long demand = requested.get();
+                long emitted = 0L;
+                while (demand > 0) {
+                    while (emitted != demand) {
+                        if (cancelled) {
+                            finish();
+                            return;
+                        }
+                        if (!elements.hasNext()) {
+                            finish();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(elements.next());
+                        emitted++;
+                    }
+                    demand = requested.addAndGet(-emitted);
+                    emitted = 0L;
+                }
+            } catch (RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not close stream of subscriber {}", subscriber, e);
+                }
+                stream = null;
+                elements = null;
+            }
+        }
+    }
+}
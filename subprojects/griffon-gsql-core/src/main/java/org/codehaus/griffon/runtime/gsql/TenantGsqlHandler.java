@@ -0,0 +1,220 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.ColumnarResult;
+import griffon.plugins.gsql.GsqlCallback;
+import griffon.plugins.gsql.GsqlHandle;
+import griffon.plugins.gsql.GsqlHandler;
+import griffon.plugins.gsql.GsqlTenantResolver;
+import griffon.plugins.gsql.exceptions.RuntimeGsqlException;
+import groovy.sql.GroovyRowResult;
+import org.reactivestreams.Publisher;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes the calls that do not name a datasource to the datasource of the current tenant, as given by the
+ * bound {@link GsqlTenantResolver}. Calls naming a datasource are passed through unchanged. Available for
+ * injection as {@code @Named("tenant") GsqlHandler}.
+ *
+ * @author Andres Almiray
+ * @see GsqlTenants
+ * @since 3.0.0
+ */
+public class TenantGsqlHandler implements GsqlHandler {
+    private final GsqlHandler delegate;
+    private final GsqlTenants gsqlTenants;
+    private final GsqlTenantResolver tenantResolver;
+
+    @Inject
+    public TenantGsqlHandler(@Nonnull GsqlHandler delegate,
+                             @Nonnull GsqlTenants gsqlTenants,
+                             @Nonnull GsqlTenantResolver tenantResolver) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.gsqlTenants = requireNonNull(gsqlTenants, "Argument 'gsqlTenants' must not be null");
+        this.tenantResolver = requireNonNull(tenantResolver, "Argument 'tenantResolver' must not be null");
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withSql(currentDatasource(), callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withSql(datasourceName, callback);
+    }
+
+    /**
+     * @return a handle on the datasource of the current tenant; it stays bound to that tenant.
+     */
+    @Nonnull
+    @Override
+    public GsqlHandle handle() {
+        return delegate.handle(currentDatasource());
+    }
+
+    @Nonnull
+    @Override
+    public GsqlHandle handle(@Nonnull String datasourceName) {
+        return delegate.handle(datasourceName);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withIdempotentSql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withIdempotentSql(currentDatasource(), callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withIdempotentSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withIdempotentSql(datasourceName, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withReadOnlySql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withReadOnlySql(currentDatasource(), callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withReadOnlySql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withReadOnlySql(datasourceName, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withTransaction(currentDatasource(), callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withTransaction(datasourceName, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String datasourceName, int isolationLevel, boolean readOnly, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+        return delegate.withTransaction(datasourceName, isolationLevel, readOnly, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSqlAsync(@Nonnull GsqlCallback<R> callback) {
+        // resolved here, the callback runs on a thread that knows nothing about the tenant
+        return delegate.withSqlAsync(currentDatasource(), callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSqlAsync(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) {
+        return delegate.withSqlAsync(datasourceName, callback);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<GroovyRowResult> stream(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+        return delegate.stream(currentDatasource(), sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<GroovyRowResult> stream(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+        return delegate.stream(datasourceName, sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Publisher<GroovyRowResult> publish(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+        return delegate.publish(currentDatasource(), sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Publisher<GroovyRowResult> publish(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+        return delegate.publish(datasourceName, sql, params, fetchSize);
+    }
+
+    @Nonnull
+    @Override
+    public List<GroovyRowResult> cachedRows(@Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+        return delegate.cachedRows(currentDatasource(), sql, params, ttl);
+    }
+
+    @Nonnull
+    @Override
+    public List<GroovyRowResult> cachedRows(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+        return delegate.cachedRows(datasourceName, sql, params, ttl);
+    }
+
+    @Nonnull
+    @Override
+    public ColumnarResult columnar(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+        return delegate.columnar(currentDatasource(), sql, params);
+    }
+
+    @Nonnull
+    @Override
+    public ColumnarResult columnar(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+        return delegate.columnar(datasourceName, sql, params);
+    }
+
+    @Override
+    public long batchInsert(@Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+        return delegate.batchInsert(currentDatasource(), table, rows, batchSize);
+    }
+
+    @Override
+    public long batchInsert(@Nonnull String datasourceName, @Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+        return delegate.batchInsert(datasourceName, table, rows, batchSize);
+    }
+
+    @Override
+    public void closeSql() {
+        delegate.closeSql(currentDatasource());
+    }
+
+    @Override
+    public void closeSql(@Nonnull String datasourceName) {
+        delegate.closeSql(datasourceName);
+    }
+
+    @Nonnull
+    private String currentDatasource() {
+        String tenant = tenantResolver.getCurrentTenant();
+        if (tenant == null) {
+            throw new IllegalStateException("No tenant is bound to the current call");
+        }
+        return gsqlTenants.datasourceNameFor(tenant);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.GsqlTenantResolver;
+
+import java.util.function.Supplier;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Resolves the tenant bound to the calling thread.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ThreadLocalGsqlTenantResolver implements GsqlTenantResolver {
+    private final ThreadLocal<String> currentTenant = new ThreadLocal<>();
+
+    @Nullable
+    @Override
+    public String getCurrentTenant() {
+        return currentTenant.get();
+    }
+
+    /**
+     * Runs {@code work} with {@code tenant} bound to the calling thread, restoring the previous tenant afterwards.
+     */
+    @Nullable
+    public <R> R withTenant(@Nonnull String tenant, @Nonnull Supplier<R> work) {
+        requireNonBlank(tenant, "Argument 'tenant' must not be blank");
+        requireNonNull(work, "Argument 'work' must not be null");
+        String previous = currentTenant.get();
+        currentTenant.set(tenant);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                currentTenant.set(previous);
+            } else {
+                currentTenant.remove();
+            }
+        }
+    }
+}
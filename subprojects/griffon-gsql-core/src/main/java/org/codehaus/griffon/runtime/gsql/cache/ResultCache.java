@@ -0,0 +1,239 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.cache;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import groovy.sql.GroovyRowResult;
+import org.codehaus.griffon.runtime.gsql.jdbc.SqlTables;
+import org.codehaus.griffon.runtime.gsql.jdbc.WriteListener;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * LRU cache of query results for a single datasource, bounded both by number of entries and by an estimate
+ * of the memory held by the cached rows. Entries expire after their time to live and are dropped as soon
+ * as a write to any of the tables they read from is reported.
+ * <p>
+ * Cached rows are read only; modifying them results in an {@code UnsupportedOperationException}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class ResultCache implements WriteListener {
+    private static final long LIST_OVERHEAD = 40L;
+    private static final long ROW_OVERHEAD = 96L;
+    private static final long COLUMN_OVERHEAD = 40L;
+
+    private final int maxEntries;
+    private final long maxMemory;
+    private final DatasourceMetrics metrics;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memory;
+    private long version;
+
+    public ResultCache(int maxEntries, long maxMemory, @Nonnull DatasourceMetrics metrics) {
+        this.maxEntries = maxEntries;
+        this.maxMemory = maxMemory;
+        this.metrics = requireNonNull(metrics, "Argument 'metrics' must not be null");
+    }
+
+    /**
+     * @return the current write version, to be handed to {@link #put} once the query for a missed entry completes.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    @Nullable
+    public List<GroovyRowResult> get(@Nonnull String sql, @Nonnull List<?> params) {
+        Key key = new Key(sql, params);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt < 0) {
+                    metrics.resultCacheHit();
+                    return entry.rows;
+                }
+                remove(key);
+            }
+        }
+        metrics.resultCacheMiss();
+        return null;
+    }
+
+    /**
+     * Caches the rows of a query unless a write was reported since {@code version} was taken, in which case the
+     * rows may already be stale.
+     *
+     * @return a read only copy of {@code rows}.
+     */
+    @Nonnull
+    public List<GroovyRowResult> put(@Nonnull String sql, @Nonnull List<?> params, @Nonnull List<GroovyRowResult> rows, long ttl, long version) {
+        List<GroovyRowResult> frozen = freeze(rows);
+        long size = estimateSize(frozen);
+        if (ttl <= 0 || size > maxMemory) {
+            return frozen;
+        }
+
+        Entry entry = new Entry(frozen, SqlTables.readTables(sql), System.nanoTime() + ttl * 1_000_000L, size);
+        synchronized (this) {
+            if (version != this.version) {
+                return frozen;
+            }
+            Key key = new Key(sql, params);
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                memory -= previous.size;
+            }
+            memory += size;
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && (entries.size() > maxEntries || memory > maxMemory); ) {
+                Entry eldest = it.next();
+                it.remove();
+                memory -= eldest.size;
+                metrics.resultCacheEviction();
+            }
+        }
+        return frozen;
+    }
+
+    @Override
+    public void onWrite(@Nullable Set<String> tables) {
+        int invalidated = 0;
+        synchronized (this) {
+            version++;
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (tables == null || entry.tables == null || !Collections.disjoint(tables, entry.tables)) {
+                    it.remove();
+                    memory -= entry.size;
+                    invalidated++;
+                }
+            }
+        }
+        if (invalidated > 0) {
+            metrics.resultCacheInvalidation(invalidated);
+        }
+    }
+
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+        memory = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    private void remove(@Nonnull Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            memory -= entry.size;
+        }
+    }
+
+    @Nonnull
+    private static List<GroovyRowResult> freeze(@Nonnull List<GroovyRowResult> rows) {
+        List<GroovyRowResult> frozen = new ArrayList<>(rows.size());
+        for (GroovyRowResult row : rows) {
+            frozen.add(new GroovyRowResult(Collections.unmodifiableMap(new LinkedHashMap<String, Object>(row))));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+
+    private static long estimateSize(@Nonnull List<GroovyRowResult> rows) {
+        long size = LIST_OVERHEAD + 8L * rows.size();
+        for (GroovyRowResult row : rows) {
+            size += ROW_OVERHEAD;
+            for (Object value : row.values()) {
+                size += COLUMN_OVERHEAD + sizeOf(value);
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable Object value) {
+        if (value == null) {
+            return 0L;
+        } else if (value instanceof CharSequence) {
+            return 40L + 2L * ((CharSequence) value).length();
+        } else if (value instanceof byte[]) {
+            return 16L + ((byte[]) value).length;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Date) {
+            return 24L;
+        }
+        return 64L;
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final List<Object> params;
+        private final int hash;
+
+        private Key(@Nonnull String sql, @Nonnull List<?> params) {
+            this.sql = sql;
+            this.params = new ArrayList<>(params);
+            this.hash = 31 * sql.hashCode() + this.params.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && sql.equals(other.sql) && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final List<GroovyRowResult> rows;
+        private final Set<String> tables;
+        private final long expiresAt;
+        private final long size;
+
+        private Entry(@Nonnull List<GroovyRowResult> rows, @Nullable Set<String> tables, long expiresAt, long size) {
+            this.rows = rows;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,689 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.columnar;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.ColumnarResult;
+import groovy.lang.Closure;
+import groovy.sql.Sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads a {@code ResultSet} column by column. Columns grow as rows are read and are trimmed to the row count once
+ * the result set is exhausted.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class DefaultColumnarResult implements ColumnarResult {
+    private static final int INITIAL_CAPACITY = 256;
+    // character columns with fewer distinct values stay dictionary encoded whatever the ratio
+    private static final int MIN_DISTINCT_VALUES = 1024;
+
+    private final int rowCount;
+    private final List<AbstractColumn> columns;
+    private final List<String> columnNames;
+    private final Map<String, Integer> indices;
+
+    private DefaultColumnarResult(int rowCount, @Nonnull List<AbstractColumn> columns) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        List<String> names = new ArrayList<>(columns.size());
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            String name = columns.get(i).getName();
+            names.add(name);
+            byName.putIfAbsent(name.toLowerCase(Locale.ENGLISH), i);
+        }
+        this.columnNames = Collections.unmodifiableList(names);
+        this.indices = byName;
+    }
+
+    /**
+     * Runs {@code query} with {@code sql} and reads every row it returns.
+     */
+    @Nonnull
+    public static DefaultColumnarResult read(@Nonnull Sql sql, @Nonnull String query, @Nonnull List<?> params) throws SQLException {
+        requireNonNull(sql, "Argument 'sql' must not be null");
+        requireNonNull(query, "Argument 'query' must not be null");
+        requireNonNull(params, "Argument 'params' must not be null");
+
+        List<DefaultColumnarResult> result = new ArrayList<>(1);
+        sql.query(query, new ArrayList<Object>(params), new Closure<Void>(null) {
+            private static final long serialVersionUID = 1L;
+
+            public void doCall(ResultSet resultSet) throws SQLException {
+                result.add(read(resultSet));
+            }
+        });
+        return result.get(0);
+    }
+
+    /**
+     * Reads every remaining row of {@code resultSet}. The result set is not closed.
+     */
+    @Nonnull
+    public static DefaultColumnarResult read(@Nonnull ResultSet resultSet) throws SQLException {
+        requireNonNull(resultSet, "Argument 'resultSet' must not be null");
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        AbstractColumn[] columns = new AbstractColumn[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = createColumn(metaData.getColumnLabel(i + 1), metaData.getColumnType(i + 1));
+        }
+
+        int rows = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].read(resultSet, i + 1, rows);
+            }
+            rows++;
+        }
+        for (AbstractColumn column : columns) {
+            column.seal(rows);
+        }
+        return new DefaultColumnarResult(rows, Collections.unmodifiableList(Arrays.asList(columns)));
+    }
+
+    @Nonnull
+    private static AbstractColumn createColumn(@Nonnull String name, int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntColumn(name);
+            case Types.BIGINT:
+                return new LongColumn(name);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn(name);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn(name);
+            default:
+                // decimals keep their precision, the remaining types have no compact form worth the trouble
+                return new ObjectColumn(name);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int indexOf(@Nonnull String columnName) {
+        requireNonNull(columnName, "Argument 'columnName' must not be null");
+        Integer index = indices.get(columnName.toLowerCase(Locale.ENGLISH));
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown column '" + columnName + "'. Available columns are " + columnNames);
+        }
+        return index;
+    }
+
+    @Nonnull
+    @Override
+    public Column column(int index) {
+        return columns.get(index);
+    }
+
+    @Nonnull
+    @Override
+    public Column column(@Nonnull String columnName) {
+        return columns.get(indexOf(columnName));
+    }
+
+    @Nonnull
+    @Override
+    public Row row(int index) {
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + index + " is out of bounds, there are " + rowCount + " rows");
+        }
+        return new RowView(index);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rowCount;
+            }
+
+            @Override
+            public Row next() {
+                if (next >= rowCount) {
+                    throw new NoSuchElementException();
+                }
+                return new RowView(next++);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarResult[rows=" + rowCount + ", columns=" + columnNames + "]";
+    }
+
+    private final class RowView implements Row {
+        private final int index;
+
+        private RowView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public boolean isNull(@Nonnull String columnName) {
+            return column(columnName).isNull(index);
+        }
+
+        @Override
+        public int getInt(@Nonnull String columnName) {
+            return column(columnName).getInt(index);
+        }
+
+        @Override
+        public long getLong(@Nonnull String columnName) {
+            return column(columnName).getLong(index);
+        }
+
+        @Override
+        public double getDouble(@Nonnull String columnName) {
+            return column(columnName).getDouble(index);
+        }
+
+        @Nullable
+        @Override
+        public String getString(@Nonnull String columnName) {
+            return column(columnName).getString(index);
+        }
+
+        @Nullable
+        @Override
+        public Object get(@Nonnull String columnName) {
+            return column(columnName).get(index);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int columnIndex) {
+            return column(columnIndex).get(index);
+        }
+
+        @Override
+        public String toString() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                values.put(columnNames.get(i), get(i));
+            }
+            return values.toString();
+        }
+    }
+
+    private abstract static class AbstractColumn implements Column {
+        private final String name;
+        private final ColumnType type;
+        // allocated on the first null value
+        private BitSet nulls;
+
+        private AbstractColumn(@Nonnull String name, @Nonnull ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        abstract void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException;
+
+        abstract void seal(int rows);
+
+        static int grow(int capacity) {
+            return capacity + (capacity >> 1);
+        }
+
+        void markNull(int row) {
+            if (nulls == null) {
+                nulls = new BitSet();
+            }
+            nulls.set(row);
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Nonnull
+        @Override
+        public ColumnType getType() {
+            return type;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return nulls != null && nulls.get(row);
+        }
+
+        @Override
+        public int getInt(int row) {
+            throw unsupported(ColumnType.INT);
+        }
+
+        @Override
+        public long getLong(int row) {
+            throw unsupported(ColumnType.LONG);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            throw unsupported(ColumnType.DOUBLE);
+        }
+
+        @Nullable
+        @Override
+        public String getString(int row) {
+            Object value = get(row);
+            return value != null ? String.valueOf(value) : null;
+        }
+
+        @Override
+        public boolean isDictionaryEncoded() {
+            return false;
+        }
+
+        @Override
+        public int getCode(int row) {
+            throw unsupported(ColumnType.STRING);
+        }
+
+        @Nonnull
+        @Override
+        public List<String> getDictionary() {
+            throw unsupported(ColumnType.STRING);
+        }
+
+        @Nonnull
+        @Override
+        public IntStream ints() {
+            throw unsupported(ColumnType.INT);
+        }
+
+        @Nonnull
+        @Override
+        public LongStream longs() {
+            throw unsupported(ColumnType.LONG);
+        }
+
+        @Nonnull
+        @Override
+        public DoubleStream doubles() {
+            throw unsupported(ColumnType.DOUBLE);
+        }
+
+        @Nonnull
+        private IllegalStateException unsupported(@Nonnull ColumnType requested) {
+            return new IllegalStateException("Column '" + name + "' holds " + type + " values, they can not be read as " + requested);
+        }
+    }
+
+    private static final class IntColumn extends AbstractColumn {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        private IntColumn(@Nonnull String name) {
+            super(name, ColumnType.INT);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = resultSet.getInt(column);
+            if (resultSet.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Nonnull
+        @Override
+        public IntStream ints() {
+            return Arrays.stream(values);
+        }
+
+        @Nonnull
+        @Override
+        public LongStream longs() {
+            return ints().asLongStream();
+        }
+
+        @Nonnull
+        @Override
+        public DoubleStream doubles() {
+            return ints().asDoubleStream();
+        }
+    }
+
+    private static final class LongColumn extends AbstractColumn {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        private LongColumn(@Nonnull String name) {
+            super(name, ColumnType.LONG);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = resultSet.getLong(column);
+            if (resultSet.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Nonnull
+        @Override
+        public LongStream longs() {
+            return Arrays.stream(values);
+        }
+
+        @Nonnull
+        @Override
+        public DoubleStream doubles() {
+            return longs().asDoubleStream();
+        }
+    }
+
+    private static final class DoubleColumn extends AbstractColumn {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        private DoubleColumn(@Nonnull String name) {
+            super(name, ColumnType.DOUBLE);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = resultSet.getDouble(column);
+            if (resultSet.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Nonnull
+        @Override
+        public DoubleStream doubles() {
+            return Arrays.stream(values);
+        }
+    }
+
+    /**
+     * Dictionary encodes values until more than half of the rows read hold distinct ones; from then on a code and a
+     * dictionary entry cost more than the value itself, so values are stored as they are.
+     */
+    private static final class StringColumn extends AbstractColumn {
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private List<String> dictionary = new ArrayList<>();
+        // only needed while reading
+        private Map<String, Integer> encoder = new HashMap<>();
+        // set once the column stops being dictionary encoded
+        private String[] values;
+
+        private StringColumn(@Nonnull String name) {
+            super(name, ColumnType.STRING);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException {
+            String value = resultSet.getString(column);
+            if (values != null) {
+                if (row == values.length) {
+                    values = Arrays.copyOf(values, grow(values.length));
+                }
+                values[row] = value;
+                if (value == null) {
+                    markNull(row);
+                }
+                return;
+            }
+
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length));
+            }
+            if (value == null) {
+                codes[row] = -1;
+                markNull(row);
+                return;
+            }
+            Integer code = encoder.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                encoder.put(value, code);
+            }
+            codes[row] = code;
+            if (dictionary.size() > MIN_DISTINCT_VALUES && dictionary.size() > (row + 1) / 2) {
+                decode(row + 1);
+            }
+        }
+
+        private void decode(int rows) {
+            values = new String[codes.length];
+            for (int i = 0; i < rows; i++) {
+                int code = codes[i];
+                values[i] = code < 0 ? null : dictionary.get(code);
+            }
+            codes = null;
+            dictionary = null;
+            encoder = null;
+        }
+
+        @Override
+        void seal(int rows) {
+            if (values != null) {
+                values = Arrays.copyOf(values, rows);
+                return;
+            }
+            codes = Arrays.copyOf(codes, rows);
+            dictionary = Collections.unmodifiableList(new ArrayList<>(dictionary));
+            encoder = null;
+        }
+
+        @Nullable
+        @Override
+        public String getString(int row) {
+            if (values != null) {
+                return values[row];
+            }
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return getString(row);
+        }
+
+        @Override
+        public boolean isDictionaryEncoded() {
+            return values == null;
+        }
+
+        @Override
+        public int getCode(int row) {
+            if (values != null) {
+                throw notEncoded();
+            }
+            return codes[row];
+        }
+
+        @Nonnull
+        @Override
+        public List<String> getDictionary() {
+            if (values != null) {
+                throw notEncoded();
+            }
+            return dictionary;
+        }
+
+        @Nonnull
+        private IllegalStateException notEncoded() {
+            return new IllegalStateException("Column '" + getName() + "' holds too many distinct values to be dictionary encoded");
+        }
+    }
+
+    private static final class ObjectColumn extends AbstractColumn {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        private ObjectColumn(@Nonnull String name) {
+            super(name, ColumnType.OBJECT);
+        }
+
+        @Override
+        void read(@Nonnull ResultSet resultSet, int column, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+            Object value = resultSet.getObject(column);
+            values[row] = value;
+            if (value == null) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        void seal(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+
+        @Nullable
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.jdbc;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decorates the pooled {@code DataSource} of a datasource with plugin level JDBC features such as
+ * statement caching, write tracking and slow query reporting. Only created when at least one of those features is enabled for
+ * the datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlDataSource implements DataSource {
+    private static final ClassLoader CLASS_LOADER = GsqlDataSource.class.getClassLoader();
+    private static final Class<?>[] CONNECTION_TYPES = {Connection.class};
+    private static final Class<?>[] STATEMENT_TYPES = {Statement.class};
+    private static final Class<?>[] PREPARED_STATEMENT_TYPES = {PreparedStatement.class};
+    private static final Class<?>[] CALLABLE_STATEMENT_TYPES = {CallableStatement.class};
+    private static final Set<String> STATEMENT_OPTIONS = new HashSet<>(asList(
+        "setMaxRows", "setLargeMaxRows", "setMaxFieldSize", "setFetchSize", "setFetchDirection", "setQueryTimeout"));
+
+    private final String datasourceName;
+    private final DataSource delegate;
+    private final StatementCache statementCache;
+    private final WriteListener writeListener;
+    private final SlowQueryTracker slowQueryTracker;
+
+    public GsqlDataSource(@Nonnull String datasourceName, @Nonnull DataSource delegate) {
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.statementCache = null;
+        this.writeListener = null;
+        this.slowQueryTracker = null;
+    }
+
+    private GsqlDataSource(@Nonnull GsqlDataSource other, @Nullable StatementCache statementCache, @Nullable WriteListener writeListener, @Nullable SlowQueryTracker slowQueryTracker) {
+        this.datasourceName = other.datasourceName;
+        this.delegate = other.delegate;
+        this.statementCache = statementCache;
+        this.writeListener = writeListener;
+        this.slowQueryTracker = slowQueryTracker;
+    }
+
+    /**
+     * Returns a copy of this {@code DataSource} that caches up to {@code maxSize} prepared statements per connection.
+     */
+    @Nonnull
+    public GsqlDataSource withStatementCache(int maxSize, @Nonnull DatasourceMetrics metrics) {
+        return new GsqlDataSource(this, new StatementCache(maxSize, metrics), writeListener, slowQueryTracker);
+    }
+
+    /**
+     * Returns a copy of this {@code DataSource} that notifies {@code listener} of the tables modified through
+     * its connections, once when a write statement executes and again when its transaction ends.
+     */
+    @Nonnull
+    public GsqlDataSource withWriteListener(@Nonnull WriteListener listener) {
+        return new GsqlDataSource(this, statementCache, requireNonNull(listener, "Argument 'listener' must not be null"), slowQueryTracker);
+    }
+
+    /**
+     * Returns a copy of this {@code DataSource} that reports to {@code listener} the statement executions taking
+     * at least {@code thresholdMillis}, keeping only a {@code sampleRate} share of them. Bind parameters are
+     * replaced by placeholders when {@code redactParameters} is set.
+     */
+    @Nonnull
+    public GsqlDataSource withSlowQueryListener(long thresholdMillis, double sampleRate, boolean redactParameters, @Nonnull SlowQueryListener listener) {
+        requireNonNull(listener, "Argument 'listener' must not be null");
+        return new GsqlDataSource(this, statementCache, writeListener, new SlowQueryTracker(datasourceName, thresholdMillis, sampleRate, redactParameters, listener));
+    }
+
+    @Nonnull
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Nonnull
+    public DataSource getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(delegate.getConnection(username, password));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    @Nonnull
+    private Connection wrap(@Nonnull Connection connection) throws SQLException {
+        if (statementCache == null && writeListener == null && slowQueryTracker == null) {
+            return connection;
+        }
+        Connection physical = statementCache != null ? physicalOf(connection) : connection;
+        return (Connection) Proxy.newProxyInstance(CLASS_LOADER, CONNECTION_TYPES, new ConnectionHandler(connection, physical));
+    }
+
+    @Nonnull
+    private static Connection physicalOf(@Nonnull Connection connection) throws SQLException {
+        // statements prepared on the pooled handle would be closed when the handle goes back to the pool
+        if (connection.isWrapperFor(Connection.class)) {
+            Connection unwrapped = connection.unwrap(Connection.class);
+            if (unwrapped != null) {
+                return unwrapped;
+            }
+        }
+        return connection;
+    }
+
+    private static Object invoke(@Nonnull Object target, @Nonnull Method method, @Nullable Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Statements created through {@code prepareStatement(String)} and its overloads taking only {@code int}
+     * options (generated keys, result set type, concurrency and holdability) can be cached.
+     */
+    private static boolean isCacheable(@Nonnull Method method) {
+        if (!"prepareStatement".equals(method.getName())) {
+            return false;
+        }
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 1; i < types.length; i++) {
+            if (types[i] != int.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static String cacheKey(@Nonnull Object[] args) {
+        if (args.length == 1) {
+            return (String) args[0];
+        }
+        StringBuilder key = new StringBuilder((String) args[0]);
+        for (int i = 1; i < args.length; i++) {
+            key.append('\0').append(args[i]);
+        }
+        return key.toString();
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection logical;
+        private final Connection physical;
+        private final Set<String> pendingTables = new HashSet<>();
+        private boolean pendingUnknown;
+
+        private ConnectionHandler(@Nonnull Connection logical, @Nonnull Connection physical) {
+            this.logical = logical;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = dispatch((Connection) proxy, method, args);
+            if (slowQueryTracker == null || result == null) {
+                return result;
+            }
+            switch (method.getName()) {
+                case "createStatement":
+                    return slowQueryTracker.track((Connection) proxy, result, STATEMENT_TYPES, null);
+                case "prepareStatement":
+                    return slowQueryTracker.track((Connection) proxy, result, PREPARED_STATEMENT_TYPES, (String) args[0]);
+                case "prepareCall":
+                    return slowQueryTracker.track((Connection) proxy, result, CALLABLE_STATEMENT_TYPES, (String) args[0]);
+                default:
+                    return result;
+            }
+        }
+
+        private Object dispatch(@Nonnull Connection connection, @Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            if (statementCache != null && "close".equals(method.getName())) {
+                SQLException failure = rollbackUncommitted();
+                Object result = delegate(method, args);
+                if (failure != null) {
+                    throw failure;
+                }
+                return result;
+            }
+            if (statementCache != null && isCacheable(method)) {
+                String key = cacheKey(args);
+                PreparedStatement statement = statementCache.take(physical, key);
+                if (statement == null) {
+                    statement = (PreparedStatement) GsqlDataSource.invoke(physical, method, args);
+                }
+                statement = (PreparedStatement) Proxy.newProxyInstance(CLASS_LOADER, PREPARED_STATEMENT_TYPES, new CachedStatementHandler(connection, physical, key, statement));
+                return writeListener != null ? trackPrepared(connection, statement, (String) args[0], PREPARED_STATEMENT_TYPES) : statement;
+            }
+
+            if (writeListener == null) {
+                return GsqlDataSource.invoke(logical, method, args);
+            }
+            switch (method.getName()) {
+                case "createStatement":
+                    return Proxy.newProxyInstance(CLASS_LOADER, STATEMENT_TYPES, new WriteTrackingHandler(connection, GsqlDataSource.invoke(logical, method, args), null));
+                case "prepareStatement":
+                    return trackPrepared(connection, GsqlDataSource.invoke(logical, method, args), (String) args[0], PREPARED_STATEMENT_TYPES);
+                case "prepareCall":
+                    return trackPrepared(connection, GsqlDataSource.invoke(logical, method, args), (String) args[0], CALLABLE_STATEMENT_TYPES);
+                default:
+                    return delegate(method, args);
+            }
+        }
+
+        private Object delegate(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            if (writeListener == null) {
+                return GsqlDataSource.invoke(logical, method, args);
+            }
+            switch (method.getName()) {
+                case "commit":
+                case "rollback":
+                case "close":
+                    try {
+                        return GsqlDataSource.invoke(logical, method, args);
+                    } finally {
+                        flushPending();
+                    }
+                default:
+                    return GsqlDataSource.invoke(logical, method, args);
+            }
+        }
+
+        /**
+         * Cached statements run on the physical connection, thus the pool cannot tell whether the transaction of
+         * a connection it takes back did any work, and skips the rollback it would otherwise issue.
+         *
+         * @return the failure of the rollback, if any.
+         */
+        @Nullable
+        private SQLException rollbackUncommitted() {
+            try {
+                if (!logical.isClosed() && !logical.getAutoCommit()) {
+                    logical.rollback();
+                }
+                return null;
+            } catch (SQLException e) {
+                return e;
+            }
+        }
+
+        @Nonnull
+        private Object trackPrepared(@Nonnull Connection connection, @Nonnull Object statement, @Nonnull String sql, @Nonnull Class<?>[] types) {
+            Set<String> tables = SqlTables.writtenTables(sql);
+            if (tables != null && tables.isEmpty()) {
+                // queries need no tracking
+                return statement;
+            }
+            return Proxy.newProxyInstance(CLASS_LOADER, types, new WriteTrackingHandler(connection, statement, new Tables(tables)));
+        }
+
+        private void written(@Nonnull Tables tables) {
+            if (tables.isEmpty()) {
+                return;
+            }
+            synchronized (pendingTables) {
+                if (tables.names == null) {
+                    pendingUnknown = true;
+                } else {
+                    pendingTables.addAll(tables.names);
+                }
+            }
+            writeListener.onWrite(tables.names);
+        }
+
+        private void flushPending() {
+            Set<String> tables;
+            synchronized (pendingTables) {
+                if (!pendingUnknown && pendingTables.isEmpty()) {
+                    return;
+                }
+                tables = pendingUnknown ? null : new HashSet<>(pendingTables);
+                pendingTables.clear();
+                pendingUnknown = false;
+            }
+            writeListener.onWrite(tables);
+        }
+
+        /**
+         * Reports the tables written by a statement after each successful execution. Plain statements carry
+         * their SQL with every call; prepared and callable statements know it up front.
+         */
+        private final class WriteTrackingHandler implements InvocationHandler {
+            private final Connection connection;
+            private final Object statement;
+            private final Tables prepared;
+            private final Tables batch = new Tables(Collections.<String>emptySet());
+
+            private WriteTrackingHandler(@Nonnull Connection connection, @Nonnull Object statement, @Nullable Tables prepared) {
+                this.connection = connection;
+                this.statement = statement;
+                this.prepared = prepared;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("getConnection".equals(name)) {
+                    return connection;
+                }
+                boolean withSql = args != null && args.length > 0 && args[0] instanceof String;
+                if ("addBatch".equals(name)) {
+                    Object result = GsqlDataSource.invoke(statement, method, args);
+                    batch.add(withSql ? new Tables(SqlTables.writtenTables((String) args[0])) : prepared);
+                    return result;
+                }
+                if ("clearBatch".equals(name)) {
+                    batch.clear();
+                    return GsqlDataSource.invoke(statement, method, args);
+                }
+                if (!name.startsWith("execute")) {
+                    return GsqlDataSource.invoke(statement, method, args);
+                }
+
+                Object result = GsqlDataSource.invoke(statement, method, args);
+                if (name.endsWith("Batch")) {
+                    written(batch.copy());
+                    batch.clear();
+                } else if (withSql) {
+                    written(new Tables(SqlTables.writtenTables((String) args[0])));
+                } else if (prepared != null) {
+                    written(prepared);
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * A set of table names where {@code null} stands for tables that could not be determined.
+     */
+    private static final class Tables {
+        private Set<String> names;
+
+        private Tables(@Nullable Set<String> names) {
+            this.names = names != null ? new HashSet<>(names) : null;
+        }
+
+        private boolean isEmpty() {
+            return names != null && names.isEmpty();
+        }
+
+        private void add(@Nullable Tables other) {
+            if (other == null || names == null) {
+                return;
+            }
+            if (other.names == null) {
+                names = null;
+            } else {
+                names.addAll(other.names);
+            }
+        }
+
+        private void clear() {
+            names = new HashSet<>();
+        }
+
+        @Nonnull
+        private Tables copy() {
+            return new Tables(names);
+        }
+    }
+
+    private final class CachedStatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Connection physical;
+        private final String key;
+        private final PreparedStatement statement;
+        private final Map<Method, Object> changedOptions = new LinkedHashMap<>();
+        private boolean closed;
+
+        private CachedStatementHandler(@Nonnull Connection connection, @Nonnull Connection physical, @Nonnull String key, @Nonnull PreparedStatement statement) {
+            this.connection = connection;
+            this.physical = physical;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connection;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement is closed");
+                    }
+                    if (STATEMENT_OPTIONS.contains(method.getName())) {
+                        rememberOption(method);
+                    }
+                    return GsqlDataSource.invoke(statement, method, args);
+            }
+        }
+
+        private void rememberOption(@Nonnull Method setter) throws Throwable {
+            if (!changedOptions.containsKey(setter)) {
+                Method getter = PreparedStatement.class.getMethod("get" + setter.getName().substring(3));
+                changedOptions.put(setter, GsqlDataSource.invoke(statement, getter, null));
+            }
+        }
+
+        private void recycle() throws SQLException {
+            // the next borrower must see the statement as if it had just been prepared
+            try {
+                for (Map.Entry<Method, Object> option : changedOptions.entrySet()) {
+                    GsqlDataSource.invoke(statement, option.getKey(), new Object[]{option.getValue()});
+                }
+                // a batch abandoned by a failed withBatch must not run along with the next one
+                statement.clearBatch();
+                statement.clearParameters();
+                statement.clearWarnings();
+            } catch (Throwable t) {
+                statement.close();
+                return;
+            }
+            statementCache.release(physical, key, statement);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.jdbc;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times statement executions and reports those above a threshold, along with their bind parameters.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class SlowQueryTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryTracker.class);
+    private static final String REDACTED = "?";
+
+    private final String datasourceName;
+    private final long threshold;
+    private final double sampleRate;
+    private final boolean redactParameters;
+    private final SlowQueryListener listener;
+
+    SlowQueryTracker(@Nonnull String datasourceName, long thresholdMillis, double sampleRate, boolean redactParameters, @Nonnull SlowQueryListener listener) {
+        this.datasourceName = datasourceName;
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleRate = sampleRate;
+        this.redactParameters = redactParameters;
+        this.listener = listener;
+    }
+
+    /**
+     * Wraps a statement so that its executions are timed.
+     *
+     * @param sql the SQL of prepared and callable statements, {@code null} for plain statements.
+     */
+    @Nonnull
+    Object track(@Nonnull Connection connection, @Nonnull Object statement, @Nonnull Class<?>[] types, @Nullable String sql) {
+        return Proxy.newProxyInstance(SlowQueryTracker.class.getClassLoader(), types, new TimedStatementHandler(connection, statement, sql));
+    }
+
+    private void executed(@Nonnull String sql, @Nonnull Object[] parameters, int parameterCount, long elapsed) {
+        if (elapsed < threshold || (sampleRate < 1d && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        List<Object> captured;
+        if (parameterCount == 0) {
+            captured = Collections.emptyList();
+        } else if (redactParameters) {
+            captured = Collections.<Object>nCopies(parameterCount, REDACTED);
+        } else {
+            captured = new ArrayList<>(Arrays.asList(parameters).subList(0, parameterCount));
+        }
+        SlowQuery query = new SlowQuery(datasourceName, sql, captured, elapsed, Thread.currentThread().getName(), System.currentTimeMillis());
+        try {
+            listener.onSlowQuery(query);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not report slow query on datasource '{}'", datasourceName, e);
+        }
+    }
+
+    private final class TimedStatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Object statement;
+        private final String sql;
+        private Object[] parameters = new Object[8];
+        private int parameterCount;
+
+        private TimedStatementHandler(@Nonnull Connection connection, @Nonnull Object statement, @Nullable String sql) {
+            this.connection = connection;
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getConnection".equals(name)) {
+                return connection;
+            }
+            if (name.startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer) {
+                bind((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                Arrays.fill(parameters, 0, parameterCount, null);
+                parameterCount = 0;
+            } else if (name.startsWith("execute")) {
+                String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                if (executed != null) {
+                    long startedAt = System.nanoTime();
+                    try {
+                        return invokeStatement(method, args);
+                    } finally {
+                        executed(executed, parameters, parameterCount, System.nanoTime() - startedAt);
+                    }
+                }
+            }
+            return invokeStatement(method, args);
+        }
+
+        private void bind(int index, @Nullable Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private Object invokeStatement(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
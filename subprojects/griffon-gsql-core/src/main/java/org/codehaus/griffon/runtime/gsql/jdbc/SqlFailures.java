@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.jdbc;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collection;
+
+/**
+ * Classifies the failures of calls made against a datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SqlFailures {
+    private static final String SQL_STATE_CONNECTION_EXCEPTION = "08";
+
+    private SqlFailures() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return {@code true} if the failure, or any of its causes, reports that the database could not be reached.
+     */
+    public static boolean isConnectionFailure(@Nullable Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith(SQL_STATE_CONNECTION_EXCEPTION)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a failure is likely to go away when the call is made again, such as a deadlock, a serialization
+     * failure or a connection reset.
+     *
+     * @param sqlStates   SQLState values, or their leading characters, of transient failures.
+     * @param vendorCodes vendor error codes of transient failures.
+     * @return {@code true} if the failure, or any of its causes, is transient.
+     */
+    public static boolean isTransientFailure(@Nullable Throwable failure, @Nonnull Collection<String> sqlStates, @Nonnull Collection<Integer> vendorCodes) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException || t instanceof SQLTransientConnectionException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                SQLException e = (SQLException) t;
+                if (vendorCodes.contains(e.getErrorCode())) {
+                    return true;
+                }
+                String state = e.getSQLState();
+                if (state != null) {
+                    for (String prefix : sqlStates) {
+                        if (state.startsWith(prefix)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.jdbc;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Extracts the tables a SQL statement reads from or writes to. This is a lexical scan, not a parser; whenever
+ * the answer is not clear cut {@code null} is returned and callers are expected to assume the worst.
+ * Table names are lower cased and stripped of quotes and schema qualifiers.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SqlTables {
+    private static final char QUOTED = '"';
+
+    private SqlTables() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the tables read by a query or {@code null} if the statement is not a plain query.
+     */
+    @Nullable
+    public static Set<String> readTables(@Nonnull String sql) {
+        List<String> tokens = tokenize(sql);
+        if (tokens.isEmpty() || !isQuery(tokens)) {
+            return null;
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("from".equals(token) || "join".equals(token)) {
+                i = collectTableList(tokens, i + 1, tables);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * @return an empty set for queries, the tables modified by a write, or {@code null} if the statement may
+     * modify tables that can not be determined.
+     */
+    @Nullable
+    public static Set<String> writtenTables(@Nonnull String sql) {
+        List<String> tokens = tokenize(sql);
+        if (tokens.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (isQuery(tokens)) {
+            return Collections.emptySet();
+        }
+
+        String first = tokens.get(0);
+        String table = null;
+        switch (first) {
+            case "insert":
+            case "merge":
+            case "replace":
+                table = tableAfter(tokens, "into");
+                break;
+            case "update":
+                table = tableAt(tokens, 1);
+                break;
+            case "delete":
+                table = tableAfter(tokens, "from");
+                break;
+            case "truncate":
+            case "drop":
+            case "alter":
+            case "create":
+                table = tableAfter(tokens, "table");
+                break;
+            default:
+                return null;
+        }
+        return table != null ? Collections.singleton(table) : null;
+    }
+
+    private static boolean isQuery(@Nonnull List<String> tokens) {
+        String first = tokens.get(0);
+        if (!"select".equals(first) && !"with".equals(first) && !"values".equals(first)) {
+            return false;
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("insert".equals(token) || "delete".equals(token) || "merge".equals(token) ||
+                ("update".equals(token) && (i == 0 || !"for".equals(tokens.get(i - 1))))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int collectTableList(@Nonnull List<String> tokens, int index, @Nonnull Set<String> tables) {
+        int i = index;
+        while (i < tokens.size()) {
+            String table = tableAt(tokens, i);
+            if (table == null) {
+                // sub query or table function, its own FROM clauses are picked up separately
+                return i - 1;
+            }
+            tables.add(table);
+            i++;
+            // optional alias
+            if (i < tokens.size() && "as".equals(tokens.get(i))) {
+                i++;
+            }
+            if (i < tokens.size() && isIdentifier(tokens.get(i)) && !isClauseKeyword(tokens.get(i))) {
+                i++;
+            }
+            if (i < tokens.size() && ",".equals(tokens.get(i))) {
+                i++;
+            } else {
+                return i - 1;
+            }
+        }
+        return i;
+    }
+
+    @Nullable
+    private static String tableAfter(@Nonnull List<String> tokens, @Nonnull String keyword) {
+        int index = tokens.indexOf(keyword);
+        if (index < 0) {
+            return null;
+        }
+        // skip IF [NOT] EXISTS and the like
+        int i = index + 1;
+        while (i < tokens.size() && ("if".equals(tokens.get(i)) || "not".equals(tokens.get(i)) || "exists".equals(tokens.get(i)) || "only".equals(tokens.get(i)))) {
+            i++;
+        }
+        return tableAt(tokens, i);
+    }
+
+    @Nullable
+    private static String tableAt(@Nonnull List<String> tokens, int index) {
+        if (index >= tokens.size() || !isIdentifier(tokens.get(index))) {
+            return null;
+        }
+        String name = tokens.get(index);
+        if (isClauseKeyword(name)) {
+            return null;
+        }
+        // schema qualified names are reduced to the table name
+        int i = index;
+        while (i + 2 < tokens.size() && ".".equals(tokens.get(i + 1)) && isIdentifier(tokens.get(i + 2))) {
+            name = tokens.get(i + 2);
+            i += 2;
+        }
+        return unquote(name);
+    }
+
+    private static boolean isIdentifier(@Nonnull String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_' || (c == QUOTED && token.length() > 1 && token.charAt(1) != QUOTED);
+    }
+
+    @Nonnull
+    private static String unquote(@Nonnull String identifier) {
+        return identifier.charAt(0) == QUOTED ? identifier.substring(1) : identifier;
+    }
+
+    private static boolean isClauseKeyword(@Nonnull String token) {
+        switch (token) {
+            case "select":
+            case "where":
+            case "group":
+            case "order":
+            case "having":
+            case "limit":
+            case "offset":
+            case "fetch":
+            case "union":
+            case "intersect":
+            case "except":
+            case "minus":
+            case "join":
+            case "inner":
+            case "left":
+            case "right":
+            case "full":
+            case "outer":
+            case "cross":
+            case "natural":
+            case "on":
+            case "using":
+            case "for":
+            case "lateral":
+            case "set":
+            case "values":
+            case "window":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Splits a statement into lower cased words and single character symbols, dropping literals and comments.
+     * Quoted identifiers keep a single leading quote so that they are never mistaken for keywords.
+     */
+    @Nonnull
+    static List<String> tokenize(@Nonnull String sql) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                tokens.add("'");
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                String identifier = sql.substring(i + 1, Math.max(i + 1, end - 1));
+                tokens.add(identifier.isEmpty() ? "\"\"" : QUOTED + identifier.toLowerCase(Locale.ENGLISH));
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i).toLowerCase(Locale.ENGLISH));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipQuoted(@Nonnull String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
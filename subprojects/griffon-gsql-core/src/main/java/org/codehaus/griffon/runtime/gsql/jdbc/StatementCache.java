@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.jdbc;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded LRU cache of prepared statements, kept per physical connection so that cached statements
+ * survive the connection being returned to and checked out again from the pool.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StatementCache {
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+    private final int maxSize;
+    private final DatasourceMetrics metrics;
+    private final Map<Connection, ConnectionStatements> connections = new IdentityHashMap<>();
+
+    StatementCache(int maxSize, @Nonnull DatasourceMetrics metrics) {
+        this.maxSize = maxSize;
+        this.metrics = requireNonNull(metrics, "Argument 'metrics' must not be null");
+    }
+
+    /**
+     * Takes a statement out of the cache. The caller owns it until it is handed back through {@link #release}.
+     */
+    @Nullable
+    PreparedStatement take(@Nonnull Connection physical, @Nonnull String key) {
+        PreparedStatement statement = statementsOf(physical).take(key);
+        if (statement != null) {
+            try {
+                if (!statement.isClosed()) {
+                    metrics.statementCacheHit();
+                    return statement;
+                }
+            } catch (SQLException e) {
+                // treat as a miss
+            }
+        }
+        metrics.statementCacheMiss();
+        return null;
+    }
+
+    void release(@Nonnull Connection physical, @Nonnull String key, @Nonnull PreparedStatement statement) {
+        PreparedStatement evicted = statementsOf(physical).put(key, statement);
+        if (evicted != null) {
+            metrics.statementCacheEviction();
+            closeQuietly(evicted);
+        }
+    }
+
+    @Nonnull
+    private ConnectionStatements statementsOf(@Nonnull Connection physical) {
+        synchronized (connections) {
+            ConnectionStatements statements = connections.get(physical);
+            if (statements == null) {
+                // a new physical connection usually means the pool retired another one
+                purgeClosedConnections();
+                statements = new ConnectionStatements();
+                connections.put(physical, statements);
+            }
+            return statements;
+        }
+    }
+
+    private void purgeClosedConnections() {
+        for (Iterator<Map.Entry<Connection, ConnectionStatements>> it = connections.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionStatements> entry = it.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException e) {
+                closed = true;
+            }
+            if (closed) {
+                it.remove();
+                entry.getValue().clear();
+            }
+        }
+    }
+
+    private static void closeQuietly(@Nonnull PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.trace("Error closing evicted statement", e);
+        }
+    }
+
+    private final class ConnectionStatements {
+        private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        @Nullable
+        private synchronized PreparedStatement take(@Nonnull String key) {
+            return statements.remove(key);
+        }
+
+        @Nullable
+        private synchronized PreparedStatement put(@Nonnull String key, @Nonnull PreparedStatement statement) {
+            PreparedStatement previous = statements.put(key, statement);
+            if (previous != null && previous != statement) {
+                return previous;
+            }
+            if (statements.size() > maxSize) {
+                Iterator<PreparedStatement> eldest = statements.values().iterator();
+                PreparedStatement evicted = eldest.next();
+                eldest.remove();
+                return evicted;
+            }
+            return null;
+        }
+
+        private synchronized void clear() {
+            statements.clear();
+        }
+    }
+}
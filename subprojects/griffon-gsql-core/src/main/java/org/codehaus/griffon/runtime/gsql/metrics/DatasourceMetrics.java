@@ -0,0 +1,222 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Call statistics of a single datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class DatasourceMetrics {
+    private final String datasourceName;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+    private final LongAdder resultCacheHits = new LongAdder();
+    private final LongAdder resultCacheMisses = new LongAdder();
+    private final LongAdder resultCacheEvictions = new LongAdder();
+    private final LongAdder resultCacheInvalidations = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+    private volatile long warmupTime;
+    private volatile SlowQueryLog slowQueryLog;
+
+    public DatasourceMetrics(@Nonnull String datasourceName) {
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+    }
+
+    /**
+     * Marks the start of a call.
+     *
+     * @return the start timestamp to be handed to {@link #callEnded(long, boolean)}
+     */
+    public long callStarted() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void callEnded(long startedAt, boolean failed) {
+        latency.record(System.nanoTime() - startedAt);
+        inFlight.decrementAndGet();
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public void statementCacheHit() {
+        statementCacheHits.increment();
+    }
+
+    public void statementCacheMiss() {
+        statementCacheMisses.increment();
+    }
+
+    public void statementCacheEviction() {
+        statementCacheEvictions.increment();
+    }
+
+    public void resultCacheHit() {
+        resultCacheHits.increment();
+    }
+
+    public void resultCacheMiss() {
+        resultCacheMisses.increment();
+    }
+
+    public void resultCacheEviction() {
+        resultCacheEvictions.increment();
+    }
+
+    public void resultCacheInvalidation(int entries) {
+        resultCacheInvalidations.add(entries);
+    }
+
+    /**
+     * Records a call being made again after a transient failure.
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+    /**
+     * Records a call that kept failing after its last attempt.
+     */
+    public void retriesExhausted() {
+        retriesExhausted.increment();
+    }
+
+    /**
+     * Records how long the pool took to warm up, in milliseconds.
+     */
+    public void warmedUp(long millis) {
+        warmupTime = millis;
+    }
+
+    /**
+     * Starts keeping the most recent {@code capacity} slow queries of this datasource.
+     */
+    @Nonnull
+    public SlowQueryLog enableSlowQueryLog(int capacity) {
+        SlowQueryLog log = new SlowQueryLog(capacity);
+        slowQueryLog = log;
+        return log;
+    }
+
+    @Nonnull
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Nonnull
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions.sum();
+    }
+
+    public long getResultCacheHits() {
+        return resultCacheHits.sum();
+    }
+
+    public long getResultCacheMisses() {
+        return resultCacheMisses.sum();
+    }
+
+    public long getResultCacheEvictions() {
+        return resultCacheEvictions.sum();
+    }
+
+    public long getResultCacheInvalidations() {
+        return resultCacheInvalidations.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRetriesExhausted() {
+        return retriesExhausted.sum();
+    }
+
+    public long getWarmupTime() {
+        return warmupTime;
+    }
+
+    /**
+     * @return the slow query log of this datasource or {@code null} if it does not track slow queries.
+     */
+    @Nullable
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        latency.reset();
+        statementCacheHits.reset();
+        statementCacheMisses.reset();
+        statementCacheEvictions.reset();
+        resultCacheHits.reset();
+        resultCacheMisses.reset();
+        resultCacheEvictions.reset();
+        resultCacheInvalidations.reset();
+        retries.reset();
+        retriesExhausted.reset();
+        SlowQueryLog log = slowQueryLog;
+        if (log != null) {
+            log.clear();
+        }
+    }
+}
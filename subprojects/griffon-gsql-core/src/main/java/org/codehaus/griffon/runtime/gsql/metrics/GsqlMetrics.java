@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of per-datasource call statistics.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlMetrics {
+    private final Map<String, DatasourceMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public DatasourceMetrics metricsFor(@Nonnull String datasourceName) {
+        DatasourceMetrics m = metrics.get(datasourceName);
+        if (m == null) {
+            m = metrics.computeIfAbsent(datasourceName, DatasourceMetrics::new);
+        }
+        return m;
+    }
+
+    /**
+     * Drops the statistics of a datasource that is not expected to be used again.
+     */
+    public void forget(@Nonnull String datasourceName) {
+        metrics.remove(datasourceName);
+    }
+
+    @Nonnull
+    public Collection<DatasourceMetrics> getAll() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    public void reset() {
+        for (DatasourceMetrics m : metrics.values()) {
+            m.reset();
+        }
+    }
+}
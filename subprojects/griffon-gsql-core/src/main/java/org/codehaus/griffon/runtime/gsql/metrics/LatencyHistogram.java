@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram in the spirit of HdrHistogram. Every power of two is split into 32 linear
+ * sub-buckets, giving roughly 3% relative precision over the whole positive {@code long} range.
+ * Recording is lock-free and allocation-free; reads are weakly consistent snapshots.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(value < 0 ? 0 : value));
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile.
+     *
+     * @param percentile a value in the range {@code (0, 100]}
+     * @return the recorded value at the percentile, {@code 0} when nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+
+        long target = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100d) / 100d * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKET_COUNT - 1);
+    }
+
+    public long getMaxValue() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0L;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKET_COUNT + mantissa - SUB_BUCKET_COUNT;
+    }
+
+    static long highestValueOf(int index) {
+        int bucket = index >> SUB_BUCKET_BITS;
+        int sub = index & (SUB_BUCKET_COUNT - 1);
+        if (bucket == 0) {
+            return sub;
+        }
+        int shift = bucket - 1;
+        long mantissa = sub + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
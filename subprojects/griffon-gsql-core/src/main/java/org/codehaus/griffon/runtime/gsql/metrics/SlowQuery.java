@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A statement that took longer than the slow query threshold of its datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SlowQuery {
+    private final String datasourceName;
+    private final String sql;
+    private final List<Object> parameters;
+    private final long elapsedTime;
+    private final String threadName;
+    private final long timestamp;
+
+    public SlowQuery(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<Object> parameters, long elapsedTime, @Nonnull String threadName, long timestamp) {
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.sql = requireNonNull(sql, "Argument 'sql' must not be null");
+        this.parameters = Collections.unmodifiableList(requireNonNull(parameters, "Argument 'parameters' must not be null"));
+        this.elapsedTime = elapsedTime;
+        this.threadName = requireNonNull(threadName, "Argument 'threadName' must not be null");
+        this.timestamp = timestamp;
+    }
+
+    @Nonnull
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the bind parameters by position, or {@code "?"} placeholders when parameters are redacted.
+     */
+    @Nonnull
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the execution time of the statement in nanoseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    @Nonnull
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return the wall clock time at which the statement completed, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the most recent slow queries of a datasource in a fixed size ring buffer. Recording never blocks;
+ * the oldest entry is overwritten once the buffer is full.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SlowQueryLog {
+    private final AtomicReferenceArray<SlowQuery> entries;
+    private final AtomicLong next = new AtomicLong();
+
+    public SlowQueryLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Argument 'capacity' must be greater than zero");
+        }
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void record(@Nonnull SlowQuery query) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        entries.set((int) (next.getAndIncrement() % entries.length()), query);
+    }
+
+    /**
+     * @return the recorded slow queries, oldest first.
+     */
+    @Nonnull
+    public List<SlowQuery> snapshot() {
+        int capacity = entries.length();
+        long end = next.get();
+        long start = Math.max(0L, end - capacity);
+        List<SlowQuery> queries = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            SlowQuery query = entries.get((int) (i % capacity));
+            if (query != null) {
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.monitor;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+import org.codehaus.griffon.runtime.gsql.metrics.LatencyHistogram;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point in time view of the call statistics of a datasource. Latencies are expressed in microseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlDatasourceStatistics {
+    private final String datasourceName;
+    private final long calls;
+    private final long errors;
+    private final int inFlight;
+    private final long latencyP50;
+    private final long latencyP99;
+    private final long latencyP999;
+    private final long latencyMax;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+    private final long resultCacheHits;
+    private final long resultCacheMisses;
+    private final long resultCacheEvictions;
+    private final long resultCacheInvalidations;
+    private final double resultCacheHitRatio;
+    private final long warmupTime;
+    private final long retries;
+    private final long retriesExhausted;
+
+    @ConstructorProperties({"datasourceName", "calls", "errors", "inFlight", "latencyP50", "latencyP99", "latencyP999", "latencyMax",
+        "statementCacheHits", "statementCacheMisses", "statementCacheEvictions",
+        "resultCacheHits", "resultCacheMisses", "resultCacheEvictions", "resultCacheInvalidations", "resultCacheHitRatio",
+        "warmupTime", "retries", "retriesExhausted"})
+    public GsqlDatasourceStatistics(String datasourceName, long calls, long errors, int inFlight,
+                                    long latencyP50, long latencyP99, long latencyP999, long latencyMax,
+                                    long statementCacheHits, long statementCacheMisses, long statementCacheEvictions,
+                                    long resultCacheHits, long resultCacheMisses, long resultCacheEvictions, long resultCacheInvalidations,
+                                    double resultCacheHitRatio, long warmupTime, long retries, long retriesExhausted) {
+        this.datasourceName = datasourceName;
+        this.calls = calls;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.latencyP50 = latencyP50;
+        this.latencyP99 = latencyP99;
+        this.latencyP999 = latencyP999;
+        this.latencyMax = latencyMax;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.statementCacheEvictions = statementCacheEvictions;
+        this.resultCacheHits = resultCacheHits;
+        this.resultCacheMisses = resultCacheMisses;
+        this.resultCacheEvictions = resultCacheEvictions;
+        this.resultCacheInvalidations = resultCacheInvalidations;
+        this.resultCacheHitRatio = resultCacheHitRatio;
+        this.warmupTime = warmupTime;
+        this.retries = retries;
+        this.retriesExhausted = retriesExhausted;
+    }
+
+    @Nonnull
+    public static GsqlDatasourceStatistics of(@Nonnull DatasourceMetrics metrics) {
+        LatencyHistogram latency = metrics.getLatency();
+        return new GsqlDatasourceStatistics(
+            metrics.getDatasourceName(),
+            metrics.getCalls(),
+            metrics.getErrors(),
+            metrics.getInFlight(),
+            micros(latency.getValueAtPercentile(50d)),
+            micros(latency.getValueAtPercentile(99d)),
+            micros(latency.getValueAtPercentile(99.9d)),
+            micros(latency.getMaxValue()),
+            metrics.getStatementCacheHits(),
+            metrics.getStatementCacheMisses(),
+            metrics.getStatementCacheEvictions(),
+            metrics.getResultCacheHits(),
+            metrics.getResultCacheMisses(),
+            metrics.getResultCacheEvictions(),
+            metrics.getResultCacheInvalidations(),
+            ratio(metrics.getResultCacheHits(), metrics.getResultCacheMisses()),
+            metrics.getWarmupTime(),
+            metrics.getRetries(),
+            metrics.getRetriesExhausted());
+    }
+
+    private static double ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0d : (double) hits / lookups;
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000L;
+    }
+
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public long getLatencyP50() {
+        return latencyP50;
+    }
+
+    public long getLatencyP99() {
+        return latencyP99;
+    }
+
+    public long getLatencyP999() {
+        return latencyP999;
+    }
+
+    public long getLatencyMax() {
+        return latencyMax;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    public long getResultCacheHits() {
+        return resultCacheHits;
+    }
+
+    public long getResultCacheMisses() {
+        return resultCacheMisses;
+    }
+
+    public long getResultCacheEvictions() {
+        return resultCacheEvictions;
+    }
+
+    public long getResultCacheInvalidations() {
+        return resultCacheInvalidations;
+    }
+
+    /**
+     * @return the share of result cache lookups that were hits, {@code 0} if there were none.
+     */
+    public double getResultCacheHitRatio() {
+        return resultCacheHitRatio;
+    }
+
+    /**
+     * @return the time the pool took to warm up when the datasource was connected, in milliseconds.
+     */
+    public long getWarmupTime() {
+        return warmupTime;
+    }
+
+    /**
+     * @return the number of times a call was made again after a transient failure.
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the number of calls that failed on their last attempt.
+     */
+    public long getRetriesExhausted() {
+        return retriesExhausted;
+    }
+}
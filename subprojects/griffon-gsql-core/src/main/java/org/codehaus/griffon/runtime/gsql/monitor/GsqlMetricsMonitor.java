@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics;
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics;
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQuery;
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQueryLog;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlMetricsMonitor extends AbstractMBeanRegistration implements GsqlMetricsMonitorMXBean {
+    private final Metadata metadata;
+    private final GsqlMetrics metrics;
+
+    public GsqlMetricsMonitor(@Nonnull Metadata metadata, @Nonnull GsqlMetrics metrics) {
+        super(metadata);
+        this.metadata = metadata;
+        this.metrics = requireNonNull(metrics, "Argument 'metrics' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins:type=Gsql,application=" + metadata.getApplicationName() + ",name=metrics");
+    }
+
+    @Override
+    public List<GsqlDatasourceStatistics> getDatasourceStatistics() {
+        List<GsqlDatasourceStatistics> statistics = new ArrayList<>();
+        for (DatasourceMetrics m : metrics.getAll()) {
+            statistics.add(GsqlDatasourceStatistics.of(m));
+        }
+        return statistics;
+    }
+
+    @Override
+    public List<GsqlSlowQuery> getSlowQueries() {
+        List<GsqlSlowQuery> queries = new ArrayList<>();
+        for (DatasourceMetrics m : metrics.getAll()) {
+            SlowQueryLog log = m.getSlowQueryLog();
+            if (log != null) {
+                for (SlowQuery query : log.snapshot()) {
+                    queries.add(GsqlSlowQuery.of(query));
+                }
+            }
+        }
+        return queries;
+    }
+
+    @Override
+    public void reset() {
+        metrics.reset();
+    }
+}
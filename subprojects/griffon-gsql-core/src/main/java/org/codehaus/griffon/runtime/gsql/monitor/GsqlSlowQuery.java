@@ -0,0 +1,90 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.monitor;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQuery;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A slow query as exposed through JMX. Bind parameters are rendered as strings and the elapsed time is
+ * expressed in microseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GsqlSlowQuery {
+    private final String datasourceName;
+    private final String sql;
+    private final List<String> parameters;
+    private final long elapsedTime;
+    private final String threadName;
+    private final long timestamp;
+
+    @ConstructorProperties({"datasourceName", "sql", "parameters", "elapsedTime", "threadName", "timestamp"})
+    public GsqlSlowQuery(String datasourceName, String sql, List<String> parameters, long elapsedTime, String threadName, long timestamp) {
+        this.datasourceName = datasourceName;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.elapsedTime = elapsedTime;
+        this.threadName = threadName;
+        this.timestamp = timestamp;
+    }
+
+    @Nonnull
+    public static GsqlSlowQuery of(@Nonnull SlowQuery query) {
+        List<String> parameters = new ArrayList<>(query.getParameters().size());
+        for (Object parameter : query.getParameters()) {
+            parameters.add(String.valueOf(parameter));
+        }
+        return new GsqlSlowQuery(
+            query.getDatasourceName(),
+            query.getSql(),
+            parameters,
+            query.getElapsedTime() / 1000L,
+            query.getThreadName(),
+            query.getTimestamp());
+    }
+
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -20,17 +20,42 @@ package org.codehaus.griffon.runtime.gsql.monitor;
 import griffon.core.env.Metadata;
 import griffon.plugins.gsql.GsqlStorage;
 import groovy.sql.Sql;
+import org.codehaus.griffon.runtime.gsql.GsqlBulkheads;
+import org.codehaus.griffon.runtime.gsql.GsqlCircuitBreakers;
 import org.codehaus.griffon.runtime.monitor.AbstractObjectStorageMonitor;
 
 import griffon.annotations.core.Nonnull;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
  * @since 1.1.0
  */
 public class GsqlStorageMonitor extends AbstractObjectStorageMonitor<Sql> implements GsqlStorageMonitorMXBean {
-    public GsqlStorageMonitor(@Nonnull Metadata metadata, @Nonnull GsqlStorage delegate) {
+    private final GsqlBulkheads bulkheads;
+    private final GsqlCircuitBreakers circuitBreakers;
+
+    public GsqlStorageMonitor(@Nonnull Metadata metadata, @Nonnull GsqlStorage delegate, @Nonnull GsqlBulkheads bulkheads, @Nonnull GsqlCircuitBreakers circuitBreakers) {
         super(metadata, delegate);
+        this.bulkheads = requireNonNull(bulkheads, "Argument 'bulkheads' must not be null");
+        this.circuitBreakers = requireNonNull(circuitBreakers, "Argument 'circuitBreakers' must not be null");
+    }
+
+    @Override
+    public Map<String, Integer> getBulkheadQueueDepths() {
+        return bulkheads.getQueueDepths();
+    }
+
+    @Override
+    public Map<String, Long> getBulkheadRejections() {
+        return bulkheads.getRejections();
+    }
+
+    @Override
+    public Map<String, String> getCircuitBreakerStates() {
+        return circuitBreakers.getStates();
     }
 
     @Override
@@ -19,9 +19,28 @@ package org.codehaus.griffon.runtime.gsql.monitor;
 
 import org.codehaus.griffon.runtime.monitor.ObjectStorageMonitorMXBean;
 
+import java.util.Map;
+
 /**
  * @author Andres Almiray
  * @since 1.1.0
  */
 public interface GsqlStorageMonitorMXBean extends ObjectStorageMonitorMXBean {
+    /**
+     * @return callers waiting for a bulkhead permit, per datasource
+     * @since 3.0.0
+     */
+    Map<String, Integer> getBulkheadQueueDepths();
+
+    /**
+     * @return calls rejected by the bulkhead, per datasource
+     * @since 3.0.0
+     */
+    Map<String, Long> getBulkheadRejections();
+
+    /**
+     * @return the state of the circuit breaker, per datasource
+     * @since 3.0.0
+     */
+    Map<String, String> getCircuitBreakerStates();
 }
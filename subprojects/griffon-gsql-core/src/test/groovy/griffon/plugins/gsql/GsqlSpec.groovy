@@ -24,20 +24,54 @@ import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectStartEvent
+import griffon.plugins.gsql.events.GsqlCircuitClosedEvent
+import griffon.plugins.gsql.events.GsqlCircuitHalfOpenEvent
+import griffon.plugins.gsql.events.GsqlCircuitOpenEvent
 import griffon.plugins.gsql.events.GsqlConnectEndEvent
 import griffon.plugins.gsql.events.GsqlConnectStartEvent
 import griffon.plugins.gsql.events.GsqlDisconnectEndEvent
 import griffon.plugins.gsql.events.GsqlDisconnectStartEvent
+import griffon.plugins.gsql.events.GsqlSlowQueryEvent
+import griffon.plugins.gsql.exceptions.GsqlBulkheadFullException
+import griffon.plugins.gsql.exceptions.GsqlCircuitOpenException
 import griffon.plugins.gsql.exceptions.RuntimeGsqlException
 import griffon.test.core.GriffonUnitRule
 import groovy.sql.DataSet
+import groovy.sql.GroovyRowResult
 import groovy.sql.Sql
+import org.codehaus.griffon.runtime.gsql.DefaultGsqlHandler
+import org.codehaus.griffon.runtime.gsql.GsqlExecutors
+import org.codehaus.griffon.runtime.gsql.GsqlTenants
+import org.codehaus.griffon.runtime.gsql.ThreadLocalGsqlTenantResolver
+import org.codehaus.griffon.runtime.gsql.metrics.DatasourceMetrics
+import org.codehaus.griffon.runtime.gsql.metrics.GsqlMetrics
+import org.codehaus.griffon.runtime.gsql.metrics.SlowQuery
 import org.junit.Rule
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import javax.inject.Named
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLSyntaxErrorException
+import java.sql.SQLTransactionRollbackException
+import java.sql.SQLTransientConnectionException
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Stream
 
 @Unroll
 class GsqlSpec extends Specification {
@@ -54,6 +88,22 @@ class GsqlSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private GsqlMetrics gsqlMetrics
+
+    @Inject
+    @Named('tenant')
+    private GsqlHandler tenantGsqlHandler
+
+    @Inject
+    private GsqlTenantResolver tenantResolver
+
+    @Inject
+    private GsqlExecutors gsqlExecutors
+
+    @Inject
+    private GsqlTenants gsqlTenants
+
     void 'Open and close default gsql'() {
         given:
         List eventNames = [
@@ -78,6 +128,53 @@ class GsqlSpec extends Specification {
         testEventHandler.events == eventNames
     }
 
+    void 'Sql is created once per datasource under concurrent access'() {
+        given:
+        int callers = 64
+        List<String> names = ['default', 'internal', 'people']
+        ConnectStartCounter counter = new ConnectStartCounter()
+        application.eventRouter.subscribe(counter)
+        ExecutorService executor = Executors.newFixedThreadPool(callers)
+        CountDownLatch gate = new CountDownLatch(1)
+
+        when:
+        List<Future<Sql>> futures = (0..<callers).collect { int i ->
+            String name = names[i % names.size()]
+            executor.submit({
+                gate.await()
+                gsqlHandler.withSql(name) { String datasourceName, Sql sql -> sql }
+            } as Callable<Sql>)
+        }
+        gate.countDown()
+        List<Sql> instances = futures*.get(30, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        counter.starts.keySet() == names as Set
+        counter.starts.values()*.get().every { it == 1 }
+        instances.unique(false) { System.identityHashCode(it) }.size() == names.size()
+    }
+
+    void 'A slow datasource does not hold up the creation of another'() {
+        given:
+        bootstrap.blockedDatasource = 'internal'
+        ExecutorService executor = Executors.newFixedThreadPool(2)
+
+        when:
+        Future<Sql> slow = executor.submit({ gsqlHandler.withSql('internal') { String datasourceName, Sql sql -> sql } } as Callable<Sql>)
+        assert bootstrap.blocked.await(10, TimeUnit.SECONDS)
+        Sql other = executor.submit({ gsqlHandler.withSql('people') { String datasourceName, Sql sql -> sql } } as Callable<Sql>)
+            .get(10, TimeUnit.SECONDS)
+        boolean waiting = !slow.done
+        bootstrap.release.countDown()
+        slow.get(10, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        other
+        waiting
+    }
+
     void 'Connect to default Sql'() {
         expect:
         gsqlHandler.withSql { String datasourceName, Sql sql ->
@@ -111,17 +208,834 @@ class GsqlSpec extends Specification {
         bootstrap.destroyWitness
     }
 
+    void 'Bootstrap init runs on a dedicated connection'() {
+        given:
+        assert !bootstrap.initWitness
+
+        when:
+        Sql handed = gsqlHandler.withSql('dedicated') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT 1')
+            sql
+        }
+
+        then:
+        bootstrap.initWitness
+        bootstrap.initSql.dataSource == null
+        !bootstrap.initSql.is(handed)
+        handed.dataSource != null
+    }
+
     void 'Can connect to #name Sql'() {
         expect:
         gsqlHandler.withSql(name) { String datasourceName, Sql sql ->
             datasourceName == name && sql
         }
 
+        where:
+        name        | _
+        'default'   | _
+        'internal'  | _
+        'dedicated' | _
+        'people'    | _
+    }
+
+    void 'Bootstrap session settings do not leak out of the dedicated connection'() {
+        given:
+        bootstrap.initAction = { String datasourceName, Sql sql ->
+            sql.execute('CREATE SCHEMA IF NOT EXISTS bootstrap')
+            sql.execute('SET SCHEMA bootstrap')
+            sql.connection.autoCommit = false
+            sql.connection.readOnly = true
+        }
+
+        when:
+        Map session = gsqlHandler.withSql('dedicated') { String datasourceName, Sql sql ->
+            sql.cacheConnection {
+                [schema: sql.firstRow('SELECT SCHEMA() AS S').S, autoCommit: sql.connection.autoCommit, readOnly: sql.connection.readOnly]
+            }
+        }
+
+        then:
+        session == [schema: 'PUBLIC', autoCommit: true, readOnly: false]
+    }
+
+    void 'Execute statements asynchronously on #name Sql'() {
+        when:
+        String result = gsqlHandler.withSqlAsync(name) { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT 1')
+            datasourceName + ':' + Thread.currentThread().name
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        result.startsWith(name + ':')
+        result != name + ':' + Thread.currentThread().name
+
         where:
         name       | _
         'default'  | _
         'internal' | _
-        'people'   | _
+    }
+
+    void 'A failing asynchronous callback completes exceptionally'() {
+        when:
+        gsqlHandler.withSqlAsync { String datasourceName, Sql sql ->
+            sql.dataSet('people').add([id: 0])
+        }.join()
+
+        then:
+        CompletionException e = thrown(CompletionException)
+        e.cause instanceof RuntimeGsqlException
+    }
+
+    void 'Calls exceeding maxConcurrentCalls are rejected'() {
+        given:
+        CountDownLatch inside = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Future<Boolean> holder = gsqlHandler.withSqlAsync('bulkhead') { String datasourceName, Sql sql ->
+            inside.countDown()
+            release.await(10, TimeUnit.SECONDS)
+        }
+        inside.await(10, TimeUnit.SECONDS)
+
+        when:
+        gsqlHandler.withSql('bulkhead') { String datasourceName, Sql sql -> true }
+
+        then:
+        GsqlBulkheadFullException e = thrown(GsqlBulkheadFullException)
+        e.gsqlName == 'bulkhead'
+        e.maxConcurrentCalls == 1
+
+        cleanup:
+        release.countDown()
+        holder.get(10, TimeUnit.SECONDS)
+    }
+
+    void 'Prepared statements are reused when the statement cache is enabled'() {
+        when:
+        List<Integer> values = gsqlHandler.withSql('cached') { String datasourceName, Sql sql ->
+            (1..5).collect { int i -> sql.firstRow('SELECT ? AS V', [i]).V as Integer }
+        }
+        gsqlHandler.withSql('cached') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT ? AS A', [1])
+            sql.firstRow('SELECT ? AS B', [2])
+            sql.firstRow('SELECT ? AS C', [3])
+        }
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor('cached')
+
+        then:
+        values == [1, 2, 3, 4, 5]
+        metrics.statementCacheMisses == 4
+        metrics.statementCacheHits == 4
+        metrics.statementCacheEvictions == 2
+    }
+
+    void 'Cached statements drop the batch of a failed withBatch'() {
+        when:
+        List<Integer> ids = gsqlHandler.withSql('cached') { String datasourceName, Sql sql ->
+            sql.cacheConnection {
+                sql.execute('CREATE TABLE IF NOT EXISTS batched (id INTEGER NOT NULL PRIMARY KEY)')
+                try {
+                    sql.withBatch(10, 'INSERT INTO batched (id) VALUES (?)') { ps ->
+                        ps.addBatch(1)
+                        throw new IllegalStateException('abandoned')
+                    }
+                } catch (IllegalStateException ignored) {
+                    // the statement goes back to the cache
+                }
+                sql.withBatch(10, 'INSERT INTO batched (id) VALUES (?)') { ps ->
+                    ps.addBatch(2)
+                }
+                sql.rows('SELECT id FROM batched ORDER BY id')*.ID
+            }
+        }
+
+        then:
+        ids == [2]
+    }
+
+    void 'Uncommitted work on cached statements is rolled back when the connection is returned'() {
+        when:
+        int count = gsqlHandler.withSql('cached') { String datasourceName, Sql sql ->
+            sql.execute('CREATE TABLE IF NOT EXISTS pending (id INTEGER NOT NULL PRIMARY KEY)')
+            sql.cacheConnection { Connection connection ->
+                connection.autoCommit = false
+                sql.executeUpdate('INSERT INTO pending (id) VALUES (?)', [1])
+            }
+            sql.firstRow('SELECT COUNT(*) AS C FROM pending').C as int
+        }
+
+        then:
+        count == 0
+    }
+
+    void 'Rows are streamed without materializing the result set'() {
+        given:
+        // 5M GroovyRowResults would need well over a gigabyte; the test JVM is capped far below that
+        long count = 0
+        long sum = 0
+
+        when:
+        gsqlHandler.stream('streaming', 'SELECT X FROM SYSTEM_RANGE(1, ?)', [5_000_000], 1000).withCloseable { stream ->
+            stream.forEach { row ->
+                count++
+                sum += row.X as long
+            }
+        }
+
+        then:
+        count == 5_000_000L
+        sum == 12_500_002_500_000L
+    }
+
+    void 'Closing a stream early releases its connection'() {
+        when:
+        List firstRows = (1..20).collect {
+            gsqlHandler.stream('streaming', 'SELECT X FROM SYSTEM_RANGE(1, 1000)', [], 10).withCloseable { stream ->
+                stream.limit(2).iterator().collect { it.X }
+            }
+        }
+
+        then:
+        firstRows.every { it == [1L, 2L] }
+    }
+
+    void 'Published rows are pulled as subscribers request them'() {
+        given:
+        PagedSubscriber subscriber = new PagedSubscriber(3, Integer.MAX_VALUE)
+
+        when:
+        gsqlHandler.publish('streaming', 'SELECT X FROM SYSTEM_RANGE(1, ?)', [10], 3).subscribe(subscriber)
+
+        then:
+        subscriber.done.await(10, TimeUnit.SECONDS)
+        subscriber.rows == (1L..10L).toList()
+        subscriber.completed
+        subscriber.failure == null
+        gsqlMetrics.metricsFor('streaming').inFlight == 0
+    }
+
+    void 'Cancelling a subscription releases its connection'() {
+        given:
+        PagedSubscriber subscriber = new PagedSubscriber(2, 4)
+        PollingConditions conditions = new PollingConditions(timeout: 10)
+
+        when:
+        gsqlHandler.publish('streaming', 'SELECT X FROM SYSTEM_RANGE(1, 1000000)', [], 2).subscribe(subscriber)
+
+        then:
+        subscriber.done.await(10, TimeUnit.SECONDS)
+        subscriber.rows == [1L, 2L, 3L, 4L]
+        !subscriber.completed
+        conditions.eventually {
+            assert gsqlMetrics.metricsFor('streaming').inFlight == 0
+        }
+    }
+
+    void 'Rows are inserted in batches'() {
+        given:
+        Iterable<Map<String, Object>> rows = (100..<2600).collect { int id -> [id: id, name: 'name' + id, lastname: 'lastname' + id] }
+
+        when:
+        long inserted = gsqlHandler.batchInsert('people', 'people', rows, 1000)
+        long count = gsqlHandler.withSql('people') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT COUNT(*) AS C FROM people WHERE id >= 100').C as long
+        }
+
+        then:
+        inserted == 2500L
+        count == 2500L
+    }
+
+    void 'Batch insert rejects rows that do not match the first row'() {
+        when:
+        gsqlHandler.batchInsert('people', 'people', [[id: 1, name: 'Danno'], [id: 2, lastname: 'Almiray']], 10)
+
+        then:
+        RuntimeGsqlException e = thrown(RuntimeGsqlException)
+        e.cause instanceof IllegalArgumentException
+    }
+
+    void 'Batch insert rejects invalid table name (#table)'() {
+        given:
+        long calls = gsqlMetrics.metricsFor('people').calls
+
+        when:
+        gsqlHandler.batchInsert('people', table, [[id: 1]], 10)
+
+        then:
+        thrown(IllegalArgumentException)
+        gsqlMetrics.metricsFor('people').calls == calls
+
+        where:
+        table                    | _
+        'people; DROP TABLE foo' | _
+        'people (id)'            | _
+    }
+
+    void 'Read only calls are spread across replicas'() {
+        given:
+        Closure<String> read = { ->
+            gsqlHandler.withReadOnlySql('replicated') { String datasourceName, Sql sql -> datasourceName }
+        }
+
+        expect: 'the primary serves calls until the first probes report back'
+        new PollingConditions(timeout: 5).eventually {
+            assert [read(), read()] as Set == ['replica1', 'replica2'] as Set
+        }
+
+        when:
+        List<String> names = (1..4).collect { read() }
+
+        then:
+        names[0] != names[1]
+        names == [names[0], names[1], names[0], names[1]]
+    }
+
+    void 'Read only calls use the primary when no replica is reachable'() {
+        expect:
+        gsqlHandler.withReadOnlySql('fallback') { String datasourceName, Sql sql -> datasourceName } == 'fallback'
+        gsqlHandler.withReadOnlySql('fallback') { String datasourceName, Sql sql -> datasourceName } == 'fallback'
+    }
+
+    void 'Read only calls use the primary when no replicas are configured'() {
+        expect:
+        gsqlHandler.withReadOnlySql('people') { String datasourceName, Sql sql -> datasourceName } == 'people'
+    }
+
+    void 'Cached rows are served until a write touches their tables'() {
+        given:
+        gsqlHandler.withSql('resultCached') { String datasourceName, Sql sql ->
+            sql.execute('CREATE TABLE IF NOT EXISTS colors (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(20) NOT NULL)')
+            sql.execute('CREATE TABLE IF NOT EXISTS sizes (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(20) NOT NULL)')
+            sql.execute("INSERT INTO colors (id, name) VALUES (1, 'red')")
+        }
+        String query = 'SELECT name FROM colors WHERE id >= ? ORDER BY id'
+        DatasourceMetrics metrics = gsqlMetrics.metricsFor('resultCached')
+
+        when:
+        List first = gsqlHandler.cachedRows('resultCached', query, [1], 60_000L)*.NAME
+        List second = gsqlHandler.cachedRows('resultCached', query, [1], 60_000L)*.NAME
+        gsqlHandler.withSql('resultCached') { String datasourceName, Sql sql ->
+            sql.execute("INSERT INTO sizes (id, name) VALUES (1, 'small')")
+        }
+        List third = gsqlHandler.cachedRows('resultCached', query, [1], 60_000L)*.NAME
+        gsqlHandler.withSql('resultCached') { String datasourceName, Sql sql ->
+            sql.execute("INSERT INTO colors (id, name) VALUES (2, 'blue')")
+        }
+        List fourth = gsqlHandler.cachedRows('resultCached', query, [1], 60_000L)*.NAME
+
+        then:
+        first == ['red']
+        second == ['red']
+        third == ['red']
+        fourth == ['red', 'blue']
+        metrics.resultCacheMisses == 2
+        metrics.resultCacheHits == 2
+        metrics.resultCacheInvalidations == 1
+    }
+
+    void 'Cached rows are read only'() {
+        given:
+        List<GroovyRowResult> rows = gsqlHandler.cachedRows('resultCached', 'SELECT 1 AS V', [], 60_000L)
+
+        when:
+        rows[0].put('V', 2)
+
+        then:
+        thrown(UnsupportedOperationException)
+
+        when:
+        rows.clear()
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    void 'Columnar results keep values in typed columns'() {
+        given:
+        gsqlHandler.withSql('internal') { String datasourceName, Sql sql ->
+            sql.execute('DROP TABLE IF EXISTS measures')
+            sql.execute('CREATE TABLE measures (id INTEGER NOT NULL, total BIGINT, ratio DOUBLE, label VARCHAR(10), amount DECIMAL(10, 2))')
+            sql.execute("INSERT INTO measures VALUES (1, 10, 0.5, 'low', 1.25), (2, NULL, 1.5, 'high', NULL), (3, 30, NULL, 'low', 3.75), (4, 40, 2.5, NULL, 4.00)")
+        }
+
+        when:
+        ColumnarResult result = gsqlHandler.columnar('internal', 'SELECT * FROM measures WHERE id >= ? ORDER BY id', [1])
+
+        then:
+        result.rowCount == 4
+        result.columnNames == ['ID', 'TOTAL', 'RATIO', 'LABEL', 'AMOUNT']
+        result.column('id').type == ColumnarResult.ColumnType.INT
+        result.column('total').type == ColumnarResult.ColumnType.LONG
+        result.column('ratio').type == ColumnarResult.ColumnType.DOUBLE
+        result.column('label').type == ColumnarResult.ColumnType.STRING
+        result.column('amount').type == ColumnarResult.ColumnType.OBJECT
+
+        and:
+        result.column('id').ints().sum() == 10
+        result.column('total').longs().sum() == 80L
+        result.column('total').isNull(1)
+        result.column('total').get(1) == null
+        result.column('label').dictionary == ['low', 'high']
+        (0..<4).collect { result.column('label').getCode(it) } == [0, 1, 0, -1]
+        result.column('amount').get(2) == 3.75G
+
+        and:
+        result.row(1).getString('label') == 'high'
+        result.row(2).isNull('ratio')
+        result.collect { ColumnarResult.Row row -> row.getInt('id') } == [1, 2, 3, 4]
+
+        when:
+        result.column('label').getInt(0)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'Columnar results store mostly distinct strings as they are'() {
+        given:
+        gsqlHandler.withSql('internal') { String datasourceName, Sql sql ->
+            sql.execute('DROP TABLE IF EXISTS tags')
+            sql.execute('CREATE TABLE tags (id INTEGER NOT NULL, name VARCHAR(20), kind VARCHAR(10))')
+            sql.execute("INSERT INTO tags SELECT x, CASE WHEN MOD(x, 7) = 0 THEN NULL ELSE 'tag-' || x END, CASE WHEN MOD(x, 2) = 0 THEN 'even' ELSE 'odd' END FROM SYSTEM_RANGE(1, 3000)")
+        }
+
+        when:
+        ColumnarResult result = gsqlHandler.columnar('internal', 'SELECT * FROM tags ORDER BY id', [])
+
+        then:
+        result.rowCount == 3000
+        !result.column('name').dictionaryEncoded
+        result.column('name').type == ColumnarResult.ColumnType.STRING
+        result.column('name').getString(0) == 'tag-1'
+        result.column('name').isNull(6)
+        result.column('name').getString(2999) == 'tag-3000'
+        result.column('kind').dictionaryEncoded
+        result.column('kind').dictionary == ['odd', 'even']
+
+        when:
+        result.column('name').getCode(0)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'Nested calls run on the connection of the enclosing transaction'() {
+        when:
+        // the bulkhead datasource allows a single call at a time, a second checkout would be rejected
+        List result = gsqlHandler.withTransaction('bulkhead', Connection.TRANSACTION_SERIALIZABLE, false) { String datasourceName, Sql sql ->
+            gsqlHandler.withSql('bulkhead') { String name, Sql nested ->
+                [nested.connection.is(sql.connection), nested.connection.autoCommit, nested.connection.transactionIsolation]
+            }
+        }
+
+        then:
+        result == [true, false, Connection.TRANSACTION_SERIALIZABLE]
+    }
+
+    void 'Transactions commit on success and roll back on failure'() {
+        given:
+        Closure<List> ids = {
+            gsqlHandler.withSql('people') { String datasourceName, Sql sql ->
+                sql.rows('SELECT id FROM people WHERE id >= 900 ORDER BY id')*.ID
+            }
+        }
+
+        when:
+        gsqlHandler.withTransaction('people') { String datasourceName, Sql sql ->
+            sql.execute("INSERT INTO people (id, name, lastname) VALUES (900, 'Ada', 'Lovelace')")
+        }
+
+        then:
+        ids() == [900]
+
+        when:
+        gsqlHandler.withTransaction('people') { String datasourceName, Sql sql ->
+            sql.execute("INSERT INTO people (id, name, lastname) VALUES (901, 'Grace', 'Hopper')")
+            gsqlHandler.withSql('people') { String name, Sql nested ->
+                nested.execute("INSERT INTO people (id, name, lastname) VALUES (900, 'Ada', 'Lovelace')")
+            }
+        }
+
+        then:
+        thrown(RuntimeGsqlException)
+        ids() == [900]
+    }
+
+    void 'Transactions roll back when the callback throws a checked exception'() {
+        when:
+        gsqlHandler.withTransaction('people') { String datasourceName, Sql sql ->
+            sql.execute("INSERT INTO people (id, name, lastname) VALUES (910, 'Edsger', 'Dijkstra')")
+            throw new SQLException('checked failure')
+        }
+
+        then:
+        RuntimeGsqlException e = thrown(RuntimeGsqlException)
+        e.cause instanceof SQLException
+        gsqlHandler.withSql('people') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT COUNT(*) AS C FROM people WHERE id = 910').C as long
+        } == 0L
+    }
+
+    void 'Batch inserts and streams join the enclosing transaction'() {
+        given:
+        gsqlHandler.withSql('bulkhead') { String datasourceName, Sql sql ->
+            sql.execute('CREATE TABLE IF NOT EXISTS tags (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(20) NOT NULL)')
+        }
+        long streamed = 0L
+
+        when:
+        // the bulkhead datasource allows a single call at a time, a second checkout would be rejected
+        gsqlHandler.withTransaction('bulkhead') { String datasourceName, Sql sql ->
+            gsqlHandler.batchInsert('bulkhead', 'tags', (1..25).collect { int id -> [id: id, name: 'tag' + id] }, 10)
+            Stream<GroovyRowResult> rows = gsqlHandler.stream('bulkhead', 'SELECT id FROM tags', [], 10)
+            try {
+                streamed = rows.count()
+            } finally {
+                rows.close()
+            }
+            throw new IllegalStateException('undo')
+        }
+
+        then:
+        RuntimeGsqlException e = thrown(RuntimeGsqlException)
+        e.cause instanceof IllegalStateException
+        streamed == 25L
+        gsqlHandler.withSql('bulkhead') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT COUNT(*) AS C FROM tags').C as long
+        } == 0L
+    }
+
+    void 'Pool is warmed up before the datasource is handed out'() {
+        given:
+        ConnectEndRecorder recorder = new ConnectEndRecorder()
+        application.eventRouter.subscribe(recorder)
+
+        when:
+        int sessions = gsqlHandler.withSql('warmed') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT COUNT(*) AS C FROM INFORMATION_SCHEMA.SESSIONS').C as int
+        }
+
+        then:
+        sessions >= 3
+        recorder.events.size() == 1
+        recorder.events[0].warmupTime >= 0L
+        gsqlMetrics.metricsFor('warmed').warmupTime == recorder.events[0].warmupTime
+    }
+
+    void 'A failing warm-up validation query prevents the datasource from connecting'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+
+        when:
+        gsqlHandler.withSql('coldWarmup') { String datasourceName, Sql sql -> true }
+
+        then:
+        thrown(RuntimeGsqlException)
+        bootstrap.destroyWitness
+        !testEventHandler.events.contains('GsqlConnectEndEvent')
+        testEventHandler.events.last() == 'GsqlDisconnectEndEvent'
+    }
+
+    void 'Warm-up never asks for more connections than the pool holds'() {
+        when:
+        long start = System.currentTimeMillis()
+        gsqlHandler.withSql('oversizedWarmup') { String datasourceName, Sql sql -> true }
+
+        then:
+        System.currentTimeMillis() - start < 10_000L
+        gsqlMetrics.metricsFor('oversizedWarmup').warmupTime >= 0L
+    }
+
+    void 'Slow queries are kept in a ring buffer and published'() {
+        given:
+        SlowQueryRecorder recorder = new SlowQueryRecorder(6)
+        application.eventRouter.subscribe(recorder)
+
+        when:
+        gsqlHandler.withSql('slow') { String datasourceName, Sql sql ->
+            (1..6).each { int i -> sql.firstRow('SELECT ? AS V', [i]) }
+        }
+        List<SlowQuery> queries = gsqlMetrics.metricsFor('slow').slowQueryLog.snapshot()
+
+        then:
+        queries*.parameters == [[3], [4], [5], [6]]
+        queries.every { it.sql == 'SELECT ? AS V' && it.threadName == Thread.currentThread().name }
+        recorder.published.await(10, TimeUnit.SECONDS)
+        recorder.events*.parameters.sort { it[0] } == [[1], [2], [3], [4], [5], [6]]
+    }
+
+    void 'Parameters of slow queries can be redacted'() {
+        when:
+        gsqlHandler.withSql('slowRedacted') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT ? AS A, ? AS B', ['secret', 42])
+        }
+
+        then:
+        gsqlMetrics.metricsFor('slowRedacted').slowQueryLog.snapshot()*.parameters == [['?', '?']]
+    }
+
+    void 'Idle datasources are closed and reconnected on demand'() {
+        given:
+        ConnectStartCounter counter = new ConnectStartCounter()
+        DisconnectLatch disconnected = new DisconnectLatch('idle')
+        application.eventRouter.subscribe(counter)
+        application.eventRouter.subscribe(disconnected)
+
+        when:
+        // a datasource in use is never closed, however long the call takes
+        boolean openWhileInUse = gsqlHandler.withSql('idle') { String datasourceName, Sql sql ->
+            Thread.sleep(600)
+            disconnected.latch.count == 1
+        }
+        boolean closed = disconnected.latch.await(10, TimeUnit.SECONDS)
+        int value = gsqlHandler.withSql('idle') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT 1 AS V').V as int
+        }
+
+        then:
+        openWhileInUse
+        closed
+        value == 1
+        counter.starts['idle'].get() == 2
+    }
+
+    void 'Circuit breaker fails fast after connection failures and closes after a successful probe'() {
+        given:
+        CircuitRecorder recorder = new CircuitRecorder()
+        application.eventRouter.subscribe(recorder)
+
+        when:
+        2.times {
+            try {
+                gsqlHandler.withSql('breaker') { String datasourceName, Sql sql ->
+                    throw new SQLTransientConnectionException('database is down')
+                }
+            } catch (RuntimeGsqlException ignored) {
+                // expected
+            }
+        }
+        gsqlHandler.withSql('breaker') { String datasourceName, Sql sql ->
+            true
+        }
+
+        then:
+        thrown(GsqlCircuitOpenException)
+        recorder.events*.getClass() == [GsqlCircuitOpenEvent]
+
+        when:
+        Thread.sleep(400)
+        int value = gsqlHandler.withSql('breaker') { String datasourceName, Sql sql ->
+            sql.firstRow('SELECT 1 AS V').V as int
+        }
+
+        then:
+        value == 1
+        recorder.events*.getClass() == [GsqlCircuitOpenEvent, GsqlCircuitHalfOpenEvent, GsqlCircuitClosedEvent]
+    }
+
+    void 'Handles resolve their datasource once and follow it across reconnects'() {
+        given:
+        GsqlHandle handle = gsqlHandler.handle('internal')
+        long calls = gsqlMetrics.metricsFor('internal').calls
+
+        when:
+        boolean cached = gsqlHandler.handle('internal').is(handle)
+        Sql first = handle.withSql { String datasourceName, Sql sql -> sql }
+        Sql second = handle.withSql { String datasourceName, Sql sql -> sql }
+        gsqlHandler.closeSql('internal')
+        Sql reconnected = handle.withSql { String datasourceName, Sql sql -> sql }
+
+        then:
+        cached
+        handle.datasourceName == 'internal'
+        first.is(second)
+        !reconnected.is(first)
+        gsqlMetrics.metricsFor('internal').calls - calls == 3
+    }
+
+    void 'Handles keep working once their datasource is forgotten'() {
+        given:
+        GsqlHandle handle = gsqlHandler.handle('dedicated')
+        Sql first = handle.withSql { String datasourceName, Sql sql -> sql }
+
+        when:
+        ((DefaultGsqlHandler) gsqlHandler).forgetSql('dedicated')
+        Sql reconnected = handle.withSql { String datasourceName, Sql sql -> sql }
+        Sql again = gsqlHandler.withSql('dedicated') { String datasourceName, Sql sql -> sql }
+
+        then:
+        !reconnected.is(first)
+        reconnected.is(again)
+        gsqlMetrics.metricsFor('dedicated').calls == 2
+    }
+
+    void 'Sql instances are handed out per thread or per call when configured so'() {
+        given:
+        Closure<Sql> current = { String datasourceName, Sql sql -> sql }
+
+        when:
+        Sql shared = gsqlHandler.withSql('internal', current)
+        Sql perCall = gsqlHandler.withSql('perCall', current)
+        Sql perThread = gsqlHandler.withSql('perThread', current)
+        Sql otherThread = Executors.newSingleThreadExecutor().with { ExecutorService executor ->
+            try {
+                executor.submit({ gsqlHandler.withSql('perThread', current) } as Callable<Sql>).get()
+            } finally {
+                executor.shutdown()
+            }
+        }
+
+        then:
+        gsqlHandler.withSql('internal', current).is(shared)
+        !gsqlHandler.withSql('perCall', current).is(perCall)
+        gsqlHandler.withSql('perCall', current).dataSource.is(perCall.dataSource)
+        gsqlHandler.withSql('perThread', current).is(perThread)
+        !otherThread.is(perThread)
+        otherThread.dataSource.is(perThread.dataSource)
+        gsqlHandler.withSql('perCall') { String datasourceName, Sql sql -> sql.firstRow('SELECT 1 AS V').V } == 1
+    }
+
+    void 'Instances of threads that have ended give back their connection'() {
+        given:
+        Sql ended = null
+        Thread thread = Thread.start {
+            ended = gsqlHandler.withSql('perThread') { String datasourceName, Sql sql ->
+                // keeps the connection on the instance beyond the call
+                sql.cacheStatements = true
+                sql.firstRow('SELECT 1 AS V')
+                sql
+            }
+        }
+        thread.join()
+        Connection held = ended.@useConnection
+        assert !held.closed
+
+        when:
+        Thread.start { gsqlHandler.withSql('perThread') { String datasourceName, Sql sql -> sql } }.join()
+
+        then:
+        held.closed
+    }
+
+    void 'Idempotent calls are retried after transient failures'() {
+        given:
+        AtomicInteger attempts = new AtomicInteger()
+        long retries = gsqlMetrics.metricsFor('retried').retries
+
+        when:
+        int value = gsqlHandler.withIdempotentSql('retried') { String datasourceName, Sql sql ->
+            if (attempts.incrementAndGet() < 3) {
+                throw new SQLTransactionRollbackException('deadlock detected', '40001')
+            }
+            sql.firstRow('SELECT 1 AS V').V as int
+        }
+
+        then:
+        value == 1
+        attempts.get() == 3
+        gsqlMetrics.metricsFor('retried').retries - retries == 2
+    }
+
+    @Unroll
+    void 'Idempotent calls give up on #description'() {
+        given:
+        AtomicInteger attempts = new AtomicInteger()
+        long exhausted = gsqlMetrics.metricsFor('retried').retriesExhausted
+
+        when:
+        gsqlHandler.withIdempotentSql('retried') { String datasourceName, Sql sql ->
+            attempts.incrementAndGet()
+            throw failure
+        }
+
+        then:
+        thrown(RuntimeGsqlException)
+        attempts.get() == expectedAttempts
+        gsqlMetrics.metricsFor('retried').retriesExhausted - exhausted == expectedExhausted
+
+        where:
+        description              | failure                                             | expectedAttempts | expectedExhausted
+        'non transient failures' | new SQLSyntaxErrorException('bad grammar', '42000') | 1                | 0
+        'the last attempt'       | new SQLException('deadlock found', 'HY000', 1213)   | 3                | 1
+    }
+
+    void 'Calls are routed to the datasource of the current tenant'() {
+        given:
+        ConnectStartCounter counter = new ConnectStartCounter()
+        DisconnectLatch disconnected = new DisconnectLatch('tenant:globex')
+        application.eventRouter.subscribe(counter)
+        application.eventRouter.subscribe(disconnected)
+        ThreadLocalGsqlTenantResolver resolver = (ThreadLocalGsqlTenantResolver) tenantResolver
+
+        when:
+        List<String> names = ['acme', 'globex', 'acme', 'initech'].collect { String tenant ->
+            resolver.withTenant(tenant) {
+                tenantGsqlHandler.withSql { String datasourceName, Sql sql ->
+                    sql.firstRow('SELECT 1 AS V')
+                    datasourceName
+                }
+            }
+        }
+
+        then:
+        names == ['tenant:acme', 'tenant:globex', 'tenant:acme', 'tenant:initech']
+        // at most two tenants are kept, globex is the least recently used one
+        disconnected.latch.await(10, TimeUnit.SECONDS)
+        counter.starts.keySet() == ['tenant:acme', 'tenant:globex', 'tenant:initech'] as Set
+        counter.starts['tenant:acme'].get() == 1
+    }
+
+    void 'State kept for evicted tenants is dropped'() {
+        given:
+        ThreadLocalGsqlTenantResolver resolver = (ThreadLocalGsqlTenantResolver) tenantResolver
+        List<String> tenants = (1..6).collect { 'cycled' + it }
+        Map<String, ExecutorService> executors = [:]
+
+        when:
+        tenants.each { String tenant ->
+            resolver.withTenant(tenant) {
+                tenantGsqlHandler.withSqlAsync { String datasourceName, Sql sql -> sql.firstRow('SELECT 1 AS V') }
+                    .get(10, TimeUnit.SECONDS)
+                executors[tenant] = gsqlExecutors.executorFor('tenant:' + tenant)
+            }
+        }
+
+        then: 'at most two tenants are kept, evicted ones are closed in the background'
+        new PollingConditions(timeout: 10).eventually {
+            assert tenants[0..3].every { executors[it].isShutdown() }
+            assert gsqlMetrics.all*.datasourceName.findAll { it.startsWith('tenant:cycled') } as Set == ['tenant:cycled5', 'tenant:cycled6'] as Set
+        }
+        tenants[4..5].every { !executors[it].isShutdown() }
+        gsqlTenants.datasourceNames as Set == ['tenant:cycled5', 'tenant:cycled6'] as Set
+    }
+
+    void 'Tenant datasources reached without the tenant handler count towards the limit'() {
+        given:
+        DisconnectLatch disconnected = new DisconnectLatch('tenant:direct1')
+        application.eventRouter.subscribe(disconnected)
+
+        when:
+        ['direct1', 'direct2', 'direct3'].each { String tenant ->
+            gsqlHandler.withSql('tenant:' + tenant) { String datasourceName, Sql sql -> sql.firstRow('SELECT 1 AS V') }
+        }
+
+        then:
+        disconnected.latch.await(10, TimeUnit.SECONDS)
+        new PollingConditions(timeout: 10).eventually {
+            assert gsqlTenants.datasourceNames as Set == ['tenant:direct2', 'tenant:direct3'] as Set
+        }
+    }
+
+    void 'Calls without a current tenant result in error'() {
+        when:
+        tenantGsqlHandler.withSql { String datasourceName, Sql sql ->
+            true
+        }
+
+        then:
+        thrown(IllegalStateException)
     }
 
     void 'Bogus Sql name (#name) results in error'() {
@@ -223,4 +1137,117 @@ class GsqlSpec extends Specification {
             events << event.class.simpleName
         }
     }
+
+    private class ConnectStartCounter {
+        Map<String, AtomicInteger> starts = new ConcurrentHashMap<>()
+
+        @EventHandler
+        void handleGsqlConnectStartEvent(GsqlConnectStartEvent event) {
+            starts.computeIfAbsent(event.name, { new AtomicInteger() }).incrementAndGet()
+        }
+    }
+
+    private class ConnectEndRecorder {
+        List<GsqlConnectEndEvent> events = new CopyOnWriteArrayList<>()
+
+        @EventHandler
+        void handleGsqlConnectEndEvent(GsqlConnectEndEvent event) {
+            events << event
+        }
+    }
+
+    private class SlowQueryRecorder {
+        List<GsqlSlowQueryEvent> events = new CopyOnWriteArrayList<>()
+        CountDownLatch published
+
+        SlowQueryRecorder(int expected) {
+            published = new CountDownLatch(expected)
+        }
+
+        @EventHandler
+        void handleGsqlSlowQueryEvent(GsqlSlowQueryEvent event) {
+            events << event
+            published.countDown()
+        }
+    }
+
+    private static class PagedSubscriber implements Subscriber<GroovyRowResult> {
+        final List<Long> rows = new CopyOnWriteArrayList<>()
+        final CountDownLatch done = new CountDownLatch(1)
+        final int pageSize
+        final int limit
+        volatile boolean completed
+        volatile Throwable failure
+        private Subscription subscription
+        private int received
+
+        PagedSubscriber(int pageSize, int limit) {
+            this.pageSize = pageSize
+            this.limit = limit
+        }
+
+        @Override
+        void onSubscribe(Subscription subscription) {
+            this.subscription = subscription
+            subscription.request(pageSize)
+        }
+
+        @Override
+        void onNext(GroovyRowResult row) {
+            rows << (row.X as long)
+            if (++received == limit) {
+                subscription.cancel()
+                done.countDown()
+            } else if (received % pageSize == 0) {
+                subscription.request(pageSize)
+            }
+        }
+
+        @Override
+        void onError(Throwable throwable) {
+            failure = throwable
+            done.countDown()
+        }
+
+        @Override
+        void onComplete() {
+            completed = true
+            done.countDown()
+        }
+    }
+
+    private class CircuitRecorder {
+        List<Object> events = new CopyOnWriteArrayList<>()
+
+        @EventHandler
+        void handleGsqlCircuitOpenEvent(GsqlCircuitOpenEvent event) {
+            events << event
+        }
+
+        @EventHandler
+        void handleGsqlCircuitHalfOpenEvent(GsqlCircuitHalfOpenEvent event) {
+            events << event
+        }
+
+        @EventHandler
+        void handleGsqlCircuitClosedEvent(GsqlCircuitClosedEvent event) {
+            events << event
+        }
+    }
+
+    private class DisconnectLatch {
+        final String name
+        final CountDownLatch latch = new CountDownLatch(1)
+
+        DisconnectLatch(String name) {
+            this.name = name
+        }
+
+        @EventHandler
+        void handleGsqlDisconnectEndEvent(GsqlDisconnectEndEvent event) {
+            if (event.name == name) {
+                latch.countDown()
+            }
+        }
+    }
 }
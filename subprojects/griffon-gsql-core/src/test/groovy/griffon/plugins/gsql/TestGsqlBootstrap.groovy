@@ -21,13 +21,28 @@ import groovy.sql.Sql
 
 import griffon.annotations.core.Nonnull
 
+import java.util.concurrent.CountDownLatch
+
 class TestGsqlBootstrap implements GsqlBootstrap {
     boolean initWitness
     boolean destroyWitness
+    Sql initSql
+    // init of this datasource waits until released
+    String blockedDatasource
+    final CountDownLatch blocked = new CountDownLatch(1)
+    final CountDownLatch release = new CountDownLatch(1)
+    // runs after the witnesses are set
+    Closure initAction
 
     @Override
     void init(@Nonnull String datasourceName, @Nonnull Sql sql) {
+        if (datasourceName == blockedDatasource) {
+            blocked.countDown()
+            release.await()
+        }
         initWitness = true
+        initSql = sql
+        initAction?.call(datasourceName, sql)
     }
 
     @Override
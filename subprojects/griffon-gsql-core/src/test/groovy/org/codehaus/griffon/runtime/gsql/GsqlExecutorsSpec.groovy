@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql
+
+import griffon.plugins.gsql.GsqlFactory
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutorService
+
+class GsqlExecutorsSpec extends Specification {
+    void 'No executor is handed out after shutdown'() {
+        given:
+        GsqlFactory factory = [getConfigurationFor: { String name -> [async: [executor: 'fixed', poolSize: 1]] }] as GsqlFactory
+        GsqlExecutors executors = new GsqlExecutors(factory)
+        ExecutorService executor = executors.executorFor('default')
+
+        when:
+        executors.shutdown()
+        executors.executorFor('default')
+
+        then:
+        executor.isShutdown()
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql
+
+import griffon.plugins.gsql.GsqlHandler
+import griffon.plugins.gsql.GsqlStorage
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+
+class GsqlShutdownCoordinatorSpec extends Specification {
+    void 'Datasources that hang while closing are abandoned'() {
+        given:
+        CountDownLatch hung = new CountDownLatch(1)
+        // a tenant datasource hangs the same way a configured one does
+        Map<String, Object> stored = new ConcurrentHashMap<>([alpha: new Object(), 'tenant:dead': new Object(), omega: new Object()])
+        GsqlStorage storage = [
+            get   : { String name -> stored[name] },
+            remove: { String name -> stored.remove(name) }
+        ] as GsqlStorage
+        GsqlHandler handler = [
+            closeSql: { String name ->
+                if (name == 'tenant:dead') hung.await()
+                stored.remove(name)
+            }
+        ] as GsqlHandler
+
+        when:
+        long start = System.currentTimeMillis()
+        new GsqlShutdownCoordinator(handler, storage).closeAll(['tenant:dead', 'alpha', 'omega', 'unused'], 200L, 1000L)
+        long elapsed = System.currentTimeMillis() - start
+
+        then:
+        stored.keySet() == ['tenant:dead'] as Set
+        elapsed < 5_000L
+
+        when: 'the hung datasource finally closes'
+        hung.countDown()
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert stored.isEmpty()
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql
+
+import griffon.plugins.gsql.GsqlCallback
+import griffon.plugins.gsql.GsqlFactory
+import griffon.plugins.gsql.GsqlHandler
+import griffon.plugins.gsql.exceptions.GsqlInitializationException
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+class GsqlStartupInitializerSpec extends Specification {
+    private final Queue<String> connected = new ConcurrentLinkedQueue<>()
+
+    void 'Dependencies are connected before their dependents'() {
+        given:
+        GsqlStartupInitializer initializer = initializer([
+            reports: [connect_on_startup: true, depends_on: ['people', 'internal']],
+            people : [connect_on_startup: true, depends_on: ['internal']],
+            internal: [:],
+            unused : [:]
+        ])
+
+        when:
+        if (parallel) {
+            initializer.connectInParallel(4, 5000L)
+        } else {
+            initializer.connectSequentially()
+        }
+
+        then:
+        connected as List == ['internal', 'people', 'reports']
+
+        where:
+        parallel << [false, true]
+    }
+
+    void 'Cyclic dependencies are rejected'() {
+        given:
+        GsqlStartupInitializer initializer = initializer([
+            a: [connect_on_startup: true, depends_on: 'b'],
+            b: [depends_on: 'a']
+        ])
+
+        when:
+        initializer.connectSequentially()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'All failures are reported when connecting in parallel'() {
+        given:
+        GsqlStartupInitializer initializer = initializer([
+            broken   : [connect_on_startup: true],
+            dependent: [connect_on_startup: true, depends_on: 'broken'],
+            healthy  : [connect_on_startup: true],
+            slow     : [connect_on_startup: true]
+        ])
+
+        when:
+        initializer.connectInParallel(4, 500L)
+
+        then:
+        GsqlInitializationException e = thrown(GsqlInitializationException)
+        e.failures.keySet() == ['broken', 'dependent', 'slow'] as Set
+        e.failures.slow instanceof java.util.concurrent.TimeoutException
+        'healthy' in connected
+    }
+
+    private GsqlStartupInitializer initializer(Map<String, Map<String, Object>> configs) {
+        GsqlFactory factory = [
+            getDatasourceNames : { -> configs.keySet() },
+            getConfigurationFor: { String name -> configs[name] }
+        ] as GsqlFactory
+        GsqlHandler handler = [
+            withSql: { String name, GsqlCallback callback ->
+                if (name == 'broken') throw new IllegalStateException(name)
+                if (name == 'slow') Thread.sleep(5000)
+                connected << name
+                null
+            }
+        ] as GsqlHandler
+        new GsqlStartupInitializer(factory, handler)
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.gsql.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class LatencyHistogramSpec extends Specification {
+    void 'Value #value falls into a bucket whose upper bound is within 3.2%'() {
+        when:
+        long upper = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value))
+
+        then:
+        upper >= value
+        upper - value <= Math.max(1L, (long) (value * 0.032d))
+
+        where:
+        value << [0L, 1L, 31L, 32L, 33L, 1_000L, 123_456L, 10_000_000L, Long.MAX_VALUE]
+    }
+
+    void 'Percentiles are computed from recorded values'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when:
+        (1..1000).each { histogram.record(it * 1_000L) }
+
+        then:
+        histogram.count == 1000
+        within(histogram.getValueAtPercentile(50d), 500_000L)
+        within(histogram.getValueAtPercentile(99d), 990_000L)
+        within(histogram.getValueAtPercentile(99.9d), 999_000L)
+        within(histogram.maxValue, 1_000_000L)
+    }
+
+    void 'Reset discards recorded values'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+        histogram.record(42L)
+
+        when:
+        histogram.reset()
+
+        then:
+        histogram.count == 0
+        histogram.getValueAtPercentile(99d) == 0L
+    }
+
+    private static boolean within(long actual, long expected) {
+        actual >= expected && actual - expected <= expected * 0.032d
+    }
+}
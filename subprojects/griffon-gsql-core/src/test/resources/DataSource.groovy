@@ -26,6 +26,13 @@ dataSource {
     }
 }
 
+gsql {
+    tenants {
+        template = 'tenant'
+        maxTenants = 2
+    }
+}
+
 environments {
     development {
         dataSource {
@@ -55,6 +62,208 @@ dataSources {
         schema = false
         url = 'jdbc:h2:mem:@application.name@-internal'
     }
+    dedicated {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        bootstrap_mode = 'dedicated'
+        pool {
+            // callers get the very connection the bootstraps ran on
+            maximumPoolSize = 1
+        }
+        url = 'jdbc:h2:mem:@application.name@-dedicated'
+    }
+    bulkhead {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        maxConcurrentCalls = 1
+        acquireTimeout = 100
+        url = 'jdbc:h2:mem:@application.name@-bulkhead'
+    }
+    cached {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        statementCache {
+            enabled = true
+            maxSize = 2
+        }
+        url = 'jdbc:h2:mem:@application.name@-cached'
+    }
+    resultCached {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        resultCache {
+            enabled = true
+            maxEntries = 10
+        }
+        url = 'jdbc:h2:mem:@application.name@-resultCached'
+    }
+    warmed {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        warmup {
+            connections = 3
+            validationQuery = 'SELECT 1'
+            parallelism = 2
+        }
+        url = 'jdbc:h2:mem:@application.name@-warmed'
+    }
+    coldWarmup {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        warmup {
+            connections = 2
+            validationQuery = 'SELECT * FROM missing_table'
+        }
+        url = 'jdbc:h2:mem:@application.name@-coldWarmup'
+    }
+    oversizedWarmup {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        pool {
+            maximumPoolSize = 2
+        }
+        warmup {
+            connections = 5
+        }
+        url = 'jdbc:h2:mem:@application.name@-oversizedWarmup'
+    }
+    slow {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        slowQueryThresholdMs = 0
+        slowQueryLogSize = 4
+        url = 'jdbc:h2:mem:@application.name@-slow'
+    }
+    slowRedacted {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        slowQueryThresholdMs = 0
+        slowQueryRedactParameters = true
+        url = 'jdbc:h2:mem:@application.name@-slowRedacted'
+    }
+    idle {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        idleTimeout = 200
+        url = 'jdbc:h2:mem:@application.name@-idle'
+    }
+    streaming {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:@application.name@-streaming;LAZY_QUERY_EXECUTION=1'
+    }
+    replicated {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        replicas {
+            names = ['replica1', 'replica2']
+        }
+        url = 'jdbc:h2:mem:@application.name@-replicated'
+    }
+    replica1 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:@application.name@-replica1'
+    }
+    replica2 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:@application.name@-replica2'
+    }
+    fallback {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        replicas {
+            names = ['unreachable']
+            healthCheckInterval = 60000
+        }
+        url = 'jdbc:h2:mem:@application.name@-fallback'
+    }
+    unreachable {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:tcp://localhost:1/unreachable'
+    }
+    breaker {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        circuitBreaker {
+            failureRateThreshold = 50
+            windowSize = 4
+            minimumCalls = 2
+            openDuration = 300
+        }
+        url = 'jdbc:h2:mem:@application.name@-breaker'
+    }
+    retried {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        retry {
+            maxAttempts = 3
+            initialDelay = 1
+            maxDelay = 5
+        }
+        url = 'jdbc:h2:mem:@application.name@-retried'
+    }
+    perThread {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        sqlScope = 'perThread'
+        url = 'jdbc:h2:mem:@application.name@-perThread'
+    }
+    perCall {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        sqlScope = 'perCall'
+        url = 'jdbc:h2:mem:@application.name@-perCall'
+    }
+    tenant {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:@application.name@-tenant-${tenant}'
+    }
     people {
         driverClassName = 'org.h2.Driver'
         username = 'sa'
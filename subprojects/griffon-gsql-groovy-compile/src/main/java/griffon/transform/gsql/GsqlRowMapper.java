@@ -0,0 +1,37 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.transform.gsql;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>Annotates a class whose instances are read from query results.</p>
+ * <p>A {@code public static final ResultSetMapper ROW_MAPPER} field is added to the class. Its mapper is compiled
+ * statically: column indices are looked up once per result set and every non static, non final property is set with
+ * the {@code ResultSet} getter that matches its type, primitive properties through primitive getters. Columns are
+ * matched to properties by name, ignoring case. The class must have a no-arg constructor.</p>
+ *
+ * @author Andres Almiray
+ * @see griffon.plugins.gsql.ResultSetMapper
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE})
+public @interface GsqlRowMapper {
+}
@@ -37,11 +37,32 @@ public interface GsqlAwareConstants extends BaseConstants {
     String SQL_TYPE = "groovy.sql.Sql";
     String GSQL_HANDLER_TYPE = "griffon.plugins.gsql.GsqlHandler";
     String GSQL_CALLBACK_TYPE = "griffon.plugins.gsql.GsqlCallback";
+    String GSQL_HANDLE_TYPE = "griffon.plugins.gsql.GsqlHandle";
+    String COLUMNAR_RESULT_TYPE = "griffon.plugins.gsql.ColumnarResult";
     String RUNTIME_GSQL_EXCEPTION_TYPE = "griffon.plugins.gsql.exceptions.RuntimeGsqlException";
+    String COMPLETABLE_FUTURE_TYPE = "java.util.concurrent.CompletableFuture";
+    String STREAM_TYPE = "java.util.stream.Stream";
+    String PUBLISHER_TYPE = "org.reactivestreams.Publisher";
+    String LIST_TYPE = "java.util.List";
+    String INT_TYPE = "int";
+    String LONG_TYPE = "long";
+    String BOOLEAN_TYPE = "boolean";
+    String ITERABLE_TYPE = "java.lang.Iterable";
+    String GROOVY_ROW_RESULT_TYPE = "groovy.sql.GroovyRowResult";
     String GSQL_HANDLER_PROPERTY = "gsqlHandler";
     String GSQL_HANDLER_FIELD_NAME = "this$" + GSQL_HANDLER_PROPERTY;
 
     String METHOD_WITH_SQL = "withSql";
+    String METHOD_HANDLE = "handle";
+    String METHOD_WITH_IDEMPOTENT_SQL = "withIdempotentSql";
+    String METHOD_WITH_READ_ONLY_SQL = "withReadOnlySql";
+    String METHOD_WITH_TRANSACTION = "withTransaction";
+    String METHOD_WITH_SQL_ASYNC = "withSqlAsync";
+    String METHOD_STREAM = "stream";
+    String METHOD_PUBLISH = "publish";
+    String METHOD_CACHED_ROWS = "cachedRows";
+    String METHOD_COLUMNAR = "columnar";
+    String METHOD_BATCH_INSERT = "batchInsert";
     String METHOD_CLOSE_SQL = "closeSql";
     String DATASOURCE_NAME = "datasourceName";
     String CALLBACK = "callback";
@@ -74,6 +95,208 @@ public interface GsqlAwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(GSQL_HANDLE_TYPE),
+            METHOD_HANDLE
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(GSQL_HANDLE_TYPE),
+            METHOD_HANDLE,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_IDEMPOTENT_SQL,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_IDEMPOTENT_SQL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SQL,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SQL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NULLABLE),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(INT_TYPE),
+                type(BOOLEAN_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_SQL_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_SQL_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), GSQL_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(PUBLISHER_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_PUBLISH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(INT_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(PUBLISHER_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_PUBLISH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(INT_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_CACHED_ROWS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(LONG_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, GROOVY_ROW_RESULT_TYPE),
+            METHOD_CACHED_ROWS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE),
+                type(LONG_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COLUMNAR_RESULT_TYPE),
+            METHOD_COLUMNAR,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COLUMNAR_RESULT_TYPE),
+            METHOD_COLUMNAR,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), LIST_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(LONG_TYPE),
+            METHOD_BATCH_INSERT,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG_TYPE),
+            METHOD_BATCH_INSERT,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_GSQL_EXCEPTION_TYPE))
         )
     };
 }
@@ -0,0 +1,285 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.gsql.ast.transform;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.gsql.ResultSetMapper;
+import griffon.transform.gsql.GsqlRowMapper;
+import groovy.transform.CompileStatic;
+import org.codehaus.griffon.compile.core.AnnotationHandler;
+import org.codehaus.griffon.compile.core.AnnotationHandlerFor;
+import org.codehaus.griffon.compile.core.ast.transform.AbstractASTTransformation;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ConstructorNode;
+import org.codehaus.groovy.ast.GenericsType;
+import org.codehaus.groovy.ast.InnerClassNode;
+import org.codehaus.groovy.ast.MixinNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.PropertyNode;
+import org.codehaus.groovy.ast.VariableScope;
+import org.codehaus.groovy.ast.expr.BooleanExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.WhileStatement;
+import org.codehaus.groovy.classgen.VariableScopeVisitor;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.codehaus.groovy.transform.sc.StaticCompileTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.assignS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.classX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.constX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ctorX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.declS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.param;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.params;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.propX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.returnS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.stmt;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
+import static org.codehaus.groovy.ast.tools.GenericsUtils.makeClassSafeWithGenerics;
+
+/**
+ * Generates a statically compiled {@code ResultSetMapper} for classes annotated with {@code @GsqlRowMapper}.
+ * For a class {@code Person} with properties {@code id} ({@code long}) and {@code name} it generates the equivalent of
+ * <pre>
+ * public static final ResultSetMapper&lt;Person&gt; ROW_MAPPER = new Person.RowMapper()
+ *
+ * &#64;CompileStatic
+ * public static class RowMapper implements ResultSetMapper&lt;Person&gt; {
+ *     List&lt;Person&gt; map(ResultSet resultSet) throws SQLException {
+ *         int column$0 = resultSet.findColumn('id')
+ *         int column$1 = resultSet.findColumn('name')
+ *         List&lt;Person&gt; rows = new ArrayList&lt;Person&gt;()
+ *         while (resultSet.next()) {
+ *             Person row = new Person()
+ *             row.id = resultSet.getLong(column$0)
+ *             row.name = resultSet.getString(column$1)
+ *             rows.add(row)
+ *         }
+ *         return rows
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@AnnotationHandlerFor(GsqlRowMapper.class)
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class GsqlRowMapperASTTransformation extends AbstractASTTransformation implements AnnotationHandler {
+    public static final String ROW_MAPPER_FIELD_NAME = "ROW_MAPPER";
+    public static final String ROW_MAPPER_CLASS_NAME = "RowMapper";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GsqlRowMapperASTTransformation.class);
+    private static final ClassNode RESULT_SET_MAPPER_CNODE = makeClassSafe(ResultSetMapper.class);
+    private static final ClassNode RESULT_SET_CNODE = makeClassSafe(ResultSet.class);
+    private static final ClassNode SQL_EXCEPTION_CNODE = makeClassSafe(SQLException.class);
+    private static final ClassNode ARRAY_LIST_CNODE = makeClassSafe(ArrayList.class);
+    private static final ClassNode COMPILE_STATIC_CNODE = makeClassSafe(CompileStatic.class);
+    private static final String METHOD_MAP = "map";
+    private static final String METHOD_GET_OBJECT = "getObject";
+    private static final Map<String, String> GETTERS = new HashMap<>();
+
+    static {
+        GETTERS.put("boolean", "getBoolean");
+        GETTERS.put("byte", "getByte");
+        GETTERS.put("short", "getShort");
+        GETTERS.put("int", "getInt");
+        GETTERS.put("long", "getLong");
+        GETTERS.put("float", "getFloat");
+        GETTERS.put("double", "getDouble");
+        GETTERS.put(String.class.getName(), "getString");
+        GETTERS.put(BigDecimal.class.getName(), "getBigDecimal");
+        GETTERS.put(Date.class.getName(), "getDate");
+        GETTERS.put(Time.class.getName(), "getTime");
+        GETTERS.put(Timestamp.class.getName(), "getTimestamp");
+    }
+
+    /**
+     * Handles the bulk of the processing, mostly delegating to other methods.
+     *
+     * @param nodes  the ast nodes
+     * @param source the source unit for the nodes
+     */
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        checkNodesForAnnotationAndType(nodes[0], nodes[1]);
+        addRowMapperIfNeeded(source, (AnnotationNode) nodes[0], (ClassNode) nodes[1]);
+    }
+
+    public static void addRowMapperIfNeeded(SourceUnit source, AnnotationNode annotationNode, ClassNode classNode) {
+        if (classNode.getField(ROW_MAPPER_FIELD_NAME) != null) {
+            addError(source, "@" + GsqlRowMapper.class.getSimpleName() + " can not be applied to " + classNode.getName() +
+                " as it already declares a field named " + ROW_MAPPER_FIELD_NAME, classNode);
+            return;
+        }
+        if (!hasNoArgsConstructor(classNode)) {
+            addError(source, "@" + GsqlRowMapper.class.getSimpleName() + " requires " + classNode.getName() +
+                " to declare a no-arg constructor", classNode);
+            return;
+        }
+        for (PropertyNode property : mappedProperties(classNode)) {
+            if (getterFor(property.getType()) == null) {
+                addError(source, "@" + GsqlRowMapper.class.getSimpleName() + " can not map property " + property.getName() +
+                    " of type " + property.getType().getName(), property);
+                return;
+            }
+        }
+
+        LOG.debug("Injecting {} into {}", ROW_MAPPER_FIELD_NAME, classNode.getName());
+        apply(source, classNode);
+    }
+
+    /**
+     * Adds the mapper class and the field holding its instance.
+     *
+     * @param source         the source unit of the class
+     * @param declaringClass the class to which we add the mapper
+     */
+    public static void apply(@Nonnull SourceUnit source, @Nonnull ClassNode declaringClass) {
+        ClassNode rowType = declaringClass.getPlainNodeReference();
+        ClassNode mapperType = makeClassSafeWithGenerics(RESULT_SET_MAPPER_CNODE, new GenericsType(rowType));
+
+        InnerClassNode mapper = new InnerClassNode(declaringClass, declaringClass.getName() + "$" + ROW_MAPPER_CLASS_NAME,
+            Modifier.PUBLIC | Modifier.STATIC, ClassHelper.OBJECT_TYPE, new ClassNode[]{mapperType}, MixinNode.EMPTY_ARRAY);
+        // dynamic dispatch would box every primitive on its way from the ResultSet to the row
+        AnnotationNode compileStatic = new AnnotationNode(COMPILE_STATIC_CNODE);
+        mapper.addAnnotation(compileStatic);
+        mapper.addTransform(StaticCompileTransformation.class, compileStatic);
+
+        Parameter resultSet = param(RESULT_SET_CNODE, "resultSet");
+        ClassNode listType = makeClassSafeWithGenerics(ClassHelper.LIST_TYPE, new GenericsType(rowType));
+        mapper.addMethod(METHOD_MAP, Modifier.PUBLIC, listType, params(resultSet), new ClassNode[]{SQL_EXCEPTION_CNODE},
+            mapBody(declaringClass, resultSet, listType));
+        declaringClass.getModule().addClass(mapper);
+
+        declaringClass.addField(ROW_MAPPER_FIELD_NAME, Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL, mapperType,
+            ctorX(mapper));
+
+        new VariableScopeVisitor(source).visitClass(mapper);
+    }
+
+    @Nonnull
+    private static Statement mapBody(@Nonnull ClassNode declaringClass, @Nonnull Parameter resultSetParam, @Nonnull ClassNode listType) {
+        Expression resultSet = varX(resultSetParam);
+        ClassNode rowType = declaringClass.getPlainNodeReference();
+        List<PropertyNode> properties = mappedProperties(declaringClass);
+
+        List<Statement> statements = new ArrayList<>();
+        List<VariableExpression> columns = new ArrayList<>();
+        for (int i = 0; i < properties.size(); i++) {
+            // indices are resolved once per result set instead of by name on every row
+            VariableExpression column = new VariableExpression("column$" + i, ClassHelper.int_TYPE);
+            statements.add(declS(column, callX(resultSet, "findColumn", constX(properties.get(i).getName()))));
+            columns.add(column);
+        }
+        VariableExpression rows = new VariableExpression("rows", listType);
+        statements.add(declS(rows, ctorX(makeClassSafeWithGenerics(ARRAY_LIST_CNODE, new GenericsType(rowType)))));
+
+        List<Statement> loop = new ArrayList<>();
+        VariableExpression row = new VariableExpression("row", rowType);
+        loop.add(declS(row, ctorX(rowType)));
+        for (int i = 0; i < properties.size(); i++) {
+            PropertyNode property = properties.get(i);
+            loop.add(assignS(propX(varX(row), property.getName()), readColumn(resultSet, property.getType(), columns.get(i))));
+        }
+        loop.add(stmt(callX(varX(rows), "add", varX(row))));
+        statements.add(new WhileStatement(new BooleanExpression(callX(resultSet, "next")),
+            new BlockStatement(loop, new VariableScope())));
+        statements.add(returnS(varX(rows)));
+
+        return new BlockStatement(statements, new VariableScope());
+    }
+
+    @Nonnull
+    private static Expression readColumn(@Nonnull Expression resultSet, @Nonnull ClassNode type, @Nonnull VariableExpression column) {
+        String getter = getterFor(type);
+        if (METHOD_GET_OBJECT.equals(getter)) {
+            return callX(resultSet, METHOD_GET_OBJECT, args(varX(column), classX(type.getPlainNodeReference())));
+        }
+        return callX(resultSet, getter, args(varX(column)));
+    }
+
+    @Nullable
+    private static String getterFor(@Nonnull ClassNode type) {
+        if (type.isArray() && ClassHelper.byte_TYPE.equals(type.getComponentType())) {
+            return "getBytes";
+        }
+        String getter = GETTERS.get(type.getName());
+        if (getter != null) {
+            return getter;
+        }
+        // there is no ResultSet getter for char and wrapping one would defeat the point
+        return ClassHelper.isPrimitiveType(type) ? null : METHOD_GET_OBJECT;
+    }
+
+    @Nonnull
+    private static List<PropertyNode> mappedProperties(@Nonnull ClassNode classNode) {
+        List<PropertyNode> properties = new ArrayList<>();
+        for (PropertyNode property : classNode.getProperties()) {
+            if (!property.isStatic() && !property.getField().isFinal()) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    private static boolean hasNoArgsConstructor(@Nonnull ClassNode classNode) {
+        List<ConstructorNode> constructors = classNode.getDeclaredConstructors();
+        if (constructors.isEmpty()) {
+            return true;
+        }
+        for (ConstructorNode constructor : constructors) {
+            if (constructor.getParameters().length == 0 && !constructor.isPrivate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addError(@Nonnull SourceUnit source, @Nonnull String message, @Nonnull ASTNode node) {
+        source.getErrorCollector().addErrorAndContinue(new SyntaxErrorMessage(
+            new SyntaxException(message + '\n', node.getLineNumber(), node.getColumnNumber(), node.getLastLineNumber(), node.getLastColumnNumber()),
+            source));
+    }
+}
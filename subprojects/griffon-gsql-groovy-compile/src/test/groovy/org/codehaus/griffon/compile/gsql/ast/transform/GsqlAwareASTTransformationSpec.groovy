@@ -55,11 +55,17 @@ class GsqlAwareASTTransformationSpec extends Specification {
 
         when:
         def bean = shell.evaluate('''
+        import griffon.plugins.gsql.ColumnarResult
         import griffon.plugins.gsql.GsqlCallback
+        import griffon.plugins.gsql.GsqlHandle
         import griffon.plugins.gsql.exceptions.RuntimeGsqlException
         import griffon.plugins.gsql.GsqlHandler
 
         import griffon.annotations.core.Nonnull
+        import groovy.sql.GroovyRowResult
+        import org.reactivestreams.Publisher
+        import java.util.concurrent.CompletableFuture
+        import java.util.stream.Stream
         
         @griffon.transform.gsql.GsqlAware
         class GsqlHandlerBean implements GsqlHandler {
@@ -72,6 +78,90 @@ class GsqlAwareASTTransformationSpec extends Specification {
                 return null
             }
             @Override
+            public GsqlHandle handle() {
+                return null
+            }
+            @Override
+            public GsqlHandle handle(@Nonnull String datasourceName) {
+                return null
+            }
+            @Override
+            public <R> R withIdempotentSql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withIdempotentSql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withReadOnlySql(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withReadOnlySql(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withTransaction(@Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withTransaction(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> R withTransaction(@Nonnull String datasourceName, int isolationLevel, boolean readOnly, @Nonnull GsqlCallback<R> callback) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withSqlAsync(@Nonnull GsqlCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withSqlAsync(@Nonnull String datasourceName, @Nonnull GsqlCallback<R> callback) {
+                return null
+            }
+            @Override
+            Stream<GroovyRowResult> stream(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            Stream<GroovyRowResult> stream(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            Publisher<GroovyRowResult> publish(@Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+                return null
+            }
+            @Override
+            Publisher<GroovyRowResult> publish(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, int fetchSize) {
+                return null
+            }
+            @Override
+            List<GroovyRowResult> cachedRows(@Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            List<GroovyRowResult> cachedRows(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params, long ttl) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            ColumnarResult columnar(@Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            ColumnarResult columnar(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull List<?> params) throws RuntimeGsqlException {
+                return null
+            }
+            @Override
+            long batchInsert(@Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+                return 0
+            }
+            @Override
+            long batchInsert(@Nonnull String datasourceName, @Nonnull String table, @Nonnull Iterable<? extends Map<String, ?>> rows, int batchSize) throws RuntimeGsqlException {
+                return 0
+            }
+            @Override
             void closeSql(){}
             @Override
             void closeSql(@Nonnull String datasourceName){}
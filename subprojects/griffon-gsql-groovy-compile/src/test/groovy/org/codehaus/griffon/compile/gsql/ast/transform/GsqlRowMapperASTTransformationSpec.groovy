@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.gsql.ast.transform
+
+import griffon.plugins.gsql.ResultSetMapper
+import org.codehaus.groovy.control.MultipleCompilationErrorsException
+import spock.lang.Specification
+
+import java.sql.ResultSet
+
+/**
+ * @author Andres Almiray
+ */
+class GsqlRowMapperASTTransformationSpec extends Specification {
+    def 'GsqlRowMapperASTTransformation adds a mapper to a class via @GsqlRowMapper'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+        ResultSet resultSet = Mock(ResultSet)
+
+        when:
+        Class<?> type = shell.evaluate('''
+        @griffon.transform.gsql.GsqlRowMapper
+        class Person {
+            long id
+            String name
+            Integer age
+        }
+        Person
+        ''')
+        List rows = ((ResultSetMapper) type.ROW_MAPPER).map(resultSet)
+
+        then:
+        1 * resultSet.findColumn('id') >> 1
+        1 * resultSet.findColumn('name') >> 2
+        1 * resultSet.findColumn('age') >> 3
+        3 * resultSet.next() >>> [true, true, false]
+        2 * resultSet.getLong(1) >>> [1L, 2L]
+        2 * resultSet.getString(2) >>> ['Andres', 'Danno']
+        2 * resultSet.getObject(3, Integer) >>> [42, null]
+        0 * resultSet._
+
+        and:
+        rows*.id == [1L, 2L]
+        rows*.name == ['Andres', 'Danno']
+        rows*.age == [42, null]
+        type.declaredClasses*.simpleName == ['RowMapper']
+    }
+
+    def 'GsqlRowMapperASTTransformation rejects a class without a no-arg constructor via @GsqlRowMapper'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+
+        when:
+        shell.evaluate('''
+        @griffon.transform.gsql.GsqlRowMapper
+        class Person {
+            long id
+            Person(long id) { this.id = id }
+        }
+        Person
+        ''')
+
+        then:
+        MultipleCompilationErrorsException e = thrown()
+        e.message.contains('no-arg constructor')
+    }
+}